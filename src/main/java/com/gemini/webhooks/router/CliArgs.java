@@ -1,14 +1,33 @@
 package com.gemini.webhooks.router;
 
+import com.gemini.webhooks.router.dispatch.AdaptiveTimeouts;
+import com.gemini.webhooks.router.dispatch.OutputLimits;
+import com.gemini.webhooks.router.dispatch.PayloadDelivery;
+import com.gemini.webhooks.router.domain.PriorityPolicy;
+import com.gemini.webhooks.router.storage.StorageEngine;
+import com.gemini.webhooks.router.storage.StorageLayout;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @Command(name = "webhooks-router", mixinStandardHelpOptions = true,
         description = "GitHub Webhooks Router Daemon")
 public class CliArgs {
 
+    static final Duration DEFAULT_WATCHED_LISTING_RECONCILE = Duration.ofSeconds(60);
+
+    @Spec
+    private CommandSpec spec;
+
     @Option(names = "--storage-root", description = "Storage root directory (default: data)")
     private Path storageRoot = Path.of("data");
 
@@ -18,7 +37,237 @@ public class CliArgs {
     @Option(names = "--table-name", description = "DynamoDB table name (default: GithubWebhookTable)")
     private String tableName = "GithubWebhookTable";
 
+    @Option(names = "--storage-engine",
+            description = "How task state is stored: ${COMPLETION-CANDIDATES} (default: FILES)")
+    private StorageEngine storageEngine = StorageEngine.FILES;
+
+    @Option(names = "--storage-layout",
+            description = "Arrangement of completed/, failed/, skipped/ and outputs/: ${COMPLETION-CANDIDATES} (default: FLAT)")
+    private StorageLayout storageLayout = StorageLayout.FLAT;
+
+    @Option(names = "--migrate-to-sharded-layout",
+            description = "Move existing files into the per-day shards of the SHARDED layout, then exit")
+    private boolean migrateToShardedLayout;
+
+    @Option(names = "--scan-segments", description = "Number of parallel DynamoDB scan segments (default: 1)")
+    private int scanSegments = 1;
+
+    @Option(names = "--watch-pending", negatable = true, defaultValue = "true", fallbackValue = "true",
+            description = "Dispatch as soon as webhooks land in pending/, with a slower periodic sweep as a safety net (default: true)")
+    private boolean watchPending = true;
+
+    @Option(names = "--max-concurrent-agents",
+            description = "Maximum number of agent processes running at once across all repositories (default: 4)")
+    private int maxConcurrentAgents = 4;
+
+    @Option(names = "--key-repos", split = ",", paramLabel = "OWNER/REPO",
+            description = "Repositories whose issues are dispatched ahead of others (default: none)")
+    private List<String> keyRepos = new ArrayList<>();
+
+    @Option(names = "--urgent-labels", split = ",", paramLabel = "LABEL",
+            description = "Issue labels that raise a webhook's priority (default: urgent)")
+    private List<String> urgentLabels = new ArrayList<>(List.of("urgent"));
+
+    @Option(names = "--coalesce-window-seconds",
+            description = "Merge pending webhooks for the same issue that arrive within this many seconds into one agent run (default: 0, disabled)")
+    private long coalesceWindowSeconds = 0;
+
+    @Option(names = "--agent-timeout-minutes",
+            description = "Time an agent run may take before it is terminated (default: 5)")
+    private long agentTimeoutMinutes = 5;
+
+    @Option(names = "--adaptive-timeouts",
+            description = "Derive each repository's agent timeout from the durations of its past successful runs (default: false)")
+    private boolean adaptiveTimeouts;
+
+    @Option(names = "--adaptive-timeout-multiplier",
+            description = "Multiple of the 99th-percentile run duration used as the adaptive timeout (default: 3.0)")
+    private double adaptiveTimeoutMultiplier = AdaptiveTimeouts.DEFAULT_MULTIPLIER;
+
+    @Option(names = "--adaptive-timeout-floor-seconds",
+            description = "Shortest adaptive timeout (default: 60)")
+    private long adaptiveTimeoutFloorSeconds = 60;
+
+    @Option(names = "--adaptive-timeout-ceiling-minutes",
+            description = "Longest adaptive timeout (default: 60)")
+    private long adaptiveTimeoutCeilingMinutes = 60;
+
+    @Option(names = "--agent-worker-command", paramLabel = "COMMAND",
+            description = "Run agents on a pool of long-lived workers started with this command, "
+                    + "fed tasks as length-prefixed JSON frames on stdin (default: start a process per webhook)")
+    private String agentWorkerCommand;
+
+    @Option(names = "--agent-workers", description = "Number of warm agent workers in the pool (default: 4)")
+    private int agentWorkers = 4;
+
+    @Option(names = "--agent-worker-max-tasks",
+            description = "Tasks a worker handles before it is replaced by a fresh one (default: 50)")
+    private int agentWorkerMaxTasks = 50;
+
+    @Option(names = "--payload-delivery",
+            description = "How the agent receives the webhook payload: ${COMPLETION-CANDIDATES} (default: ARGUMENT)")
+    private PayloadDelivery payloadDelivery = PayloadDelivery.ARGUMENT;
+
+    @Option(names = "--output-max-bytes",
+            description = "Bytes of agent output kept per run; the rest is dropped behind a truncation marker (default: 10485760)")
+    private long outputMaxBytes = OutputLimits.DEFAULT.maxBytes();
+
+    @Option(names = "--compress-outputs", description = "Gzip agent output files once the run finishes (default: false)")
+    private boolean compressOutputs;
+
+    @Option(names = "--output-retention-days",
+            description = "Delete agent output files older than this many days (default: 30, 0 keeps them)")
+    private long outputRetentionDays = 30;
+
+    @Option(names = "--outputs-max-total-mb",
+            description = "Delete the oldest agent output files while outputs/ exceeds this many MiB (default: 0, unlimited)")
+    private long outputsMaxTotalMb = 0;
+
+    @Option(names = "--group-commit",
+            description = "Make each page of downloaded webhooks durable at once instead of fsyncing every file (default: false)")
+    private boolean groupCommit;
+
+    @Option(names = "--listing-reconcile-seconds",
+            description = "Serve listings of pending/ and processing/ from memory, re-reading them from disk at most this often; 0 reads them on every call (default: 60 with --watch-pending, else 0)")
+    private Long listingReconcileSeconds;
+
+    @Option(names = "--archive-after-days",
+            description = "Roll finished webhooks older than this many days into compressed daily archive segments (default: 0, never)")
+    private long archiveAfterDays = 0;
+
+    /**
+     * Rejects numeric options the daemon cannot run with, the way picocli rejects values it cannot parse.
+     *
+     * @throws ParameterException naming the first option out of range
+     */
+    public void validate() {
+        atLeast("--scan-segments", scanSegments, 1);
+        atLeast("--max-concurrent-agents", maxConcurrentAgents, 1);
+        atLeast("--coalesce-window-seconds", coalesceWindowSeconds, 0);
+        atLeast("--agent-timeout-minutes", agentTimeoutMinutes, 1);
+        if (adaptiveTimeoutMultiplier < 1) {
+            throw new ParameterException(spec.commandLine(),
+                    "--adaptive-timeout-multiplier must be at least 1, got " + adaptiveTimeoutMultiplier);
+        }
+        atLeast("--adaptive-timeout-floor-seconds", adaptiveTimeoutFloorSeconds, 0);
+        atLeast("--adaptive-timeout-ceiling-minutes", adaptiveTimeoutCeilingMinutes, 1);
+        if (adaptiveTimeoutFloor().compareTo(adaptiveTimeoutCeiling()) > 0) {
+            throw new ParameterException(spec.commandLine(),
+                    "--adaptive-timeout-floor-seconds must not exceed --adaptive-timeout-ceiling-minutes");
+        }
+        atLeast("--agent-workers", agentWorkers, 1);
+        atLeast("--agent-worker-max-tasks", agentWorkerMaxTasks, 1);
+        atLeast("--output-max-bytes", outputMaxBytes, 1);
+        atLeast("--output-retention-days", outputRetentionDays, 0);
+        atLeast("--outputs-max-total-mb", outputsMaxTotalMb, 0);
+        if (listingReconcileSeconds != null) {
+            atLeast("--listing-reconcile-seconds", listingReconcileSeconds, 0);
+        }
+        atLeast("--archive-after-days", archiveAfterDays, 0);
+    }
+
+    private void atLeast(String option, long value, long minimum) {
+        if (value < minimum) {
+            throw new ParameterException(spec.commandLine(), option + " must be at least " + minimum + ", got " + value);
+        }
+    }
+
     public FileBasedTasksConfig toConfig() {
-        return new FileBasedTasksConfig(storageRoot, repoBaseDir, tableName);
+        return new FileBasedTasksConfig(storageRoot, repoBaseDir, tableName, storageLayout);
+    }
+
+    public StorageEngine storageEngine() {
+        return storageEngine;
+    }
+
+    public boolean migrateToShardedLayout() {
+        return migrateToShardedLayout;
+    }
+
+    public int scanSegments() {
+        return scanSegments;
+    }
+
+    public boolean watchPending() {
+        return watchPending;
+    }
+
+    public int maxConcurrentAgents() {
+        return maxConcurrentAgents;
+    }
+
+    public Optional<List<String>> agentWorkerCommand() {
+        return Optional.ofNullable(agentWorkerCommand)
+                .map(String::strip)
+                .filter(command -> !command.isEmpty())
+                .map(command -> List.of(command.split("\\s+")));
+    }
+
+    public int agentWorkers() {
+        return agentWorkers;
+    }
+
+    public int agentWorkerMaxTasks() {
+        return agentWorkerMaxTasks;
+    }
+
+    public PayloadDelivery payloadDelivery() {
+        return payloadDelivery;
+    }
+
+    public OutputLimits outputLimits() {
+        return new OutputLimits(outputMaxBytes, compressOutputs);
+    }
+
+    public Duration outputRetention() {
+        return Duration.ofDays(outputRetentionDays);
+    }
+
+    public boolean groupCommit() {
+        return groupCommit;
+    }
+
+    public Duration listingReconcileInterval() {
+        if (listingReconcileSeconds == null) {
+            // The watcher reports files added by others, so the listing only needs an occasional check
+            return watchPending ? DEFAULT_WATCHED_LISTING_RECONCILE : Duration.ZERO;
+        }
+        return Duration.ofSeconds(listingReconcileSeconds);
+    }
+
+    public Duration archiveAfter() {
+        return Duration.ofDays(archiveAfterDays);
+    }
+
+    public long outputsMaxTotalBytes() {
+        return outputsMaxTotalMb * 1024 * 1024;
+    }
+
+    public Duration agentTimeout() {
+        return Duration.ofMinutes(agentTimeoutMinutes);
+    }
+
+    public boolean adaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    public double adaptiveTimeoutMultiplier() {
+        return adaptiveTimeoutMultiplier;
+    }
+
+    public Duration adaptiveTimeoutFloor() {
+        return Duration.ofSeconds(adaptiveTimeoutFloorSeconds);
+    }
+
+    public Duration adaptiveTimeoutCeiling() {
+        return Duration.ofMinutes(adaptiveTimeoutCeilingMinutes);
+    }
+
+    public Duration coalesceWindow() {
+        return Duration.ofSeconds(coalesceWindowSeconds);
+    }
+
+    public PriorityPolicy priorityPolicy() {
+        return new PriorityPolicy(Set.copyOf(keyRepos), Set.copyOf(urgentLabels));
     }
 }
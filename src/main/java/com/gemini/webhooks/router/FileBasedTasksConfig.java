@@ -1,12 +1,26 @@
 package com.gemini.webhooks.router;
 
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import com.gemini.webhooks.router.storage.StorageLayout;
+
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 
-public record FileBasedTasksConfig(Path storageRoot, Path repoBaseDir, String tableName) {
+public record FileBasedTasksConfig(Path storageRoot, Path repoBaseDir, String tableName, StorageLayout layout) {
 
     private static final Path DEFAULT_STORAGE_ROOT = Path.of("data");
     private static final Path DEFAULT_REPO_BASE_DIR = Path.of(System.getProperty("user.home"), "Dev");
     private static final String DEFAULT_TABLE_NAME = "GithubWebhookTable";
+    private static final DateTimeFormatter SHARD_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+    // Shard for files whose names carry no timestamp
+    static final String UNSORTED_SHARD = "unsorted";
+
+    public FileBasedTasksConfig(Path storageRoot, Path repoBaseDir, String tableName) {
+        this(storageRoot, repoBaseDir, tableName, StorageLayout.FLAT);
+    }
 
     public static FileBasedTasksConfig create() {
         return new FileBasedTasksConfig(DEFAULT_STORAGE_ROOT, DEFAULT_REPO_BASE_DIR, DEFAULT_TABLE_NAME);
@@ -24,6 +38,13 @@ public record FileBasedTasksConfig(Path storageRoot, Path repoBaseDir, String ta
         return storageRoot.resolve("pending");
     }
 
+    /**
+     * Tasks being written, before they are renamed into pending/.
+     */
+    public Path incomingDir() {
+        return storageRoot.resolve("incoming");
+    }
+
     public Path processingDir() {
         return storageRoot.resolve("processing");
     }
@@ -43,4 +64,49 @@ public record FileBasedTasksConfig(Path storageRoot, Path repoBaseDir, String ta
     public Path skippedDir() {
         return storageRoot.resolve("skipped");
     }
+
+    public Path statsDir() {
+        return storageRoot.resolve("stats");
+    }
+
+    public Path archiveDir() {
+        return storageRoot.resolve("archive");
+    }
+
+    public FileBasedTasksConfig withLayout(StorageLayout newLayout) {
+        return new FileBasedTasksConfig(storageRoot, repoBaseDir, tableName, newLayout);
+    }
+
+    /**
+     * Directory within {@code dir} that holds the task file {@code filename}: with the sharded layout, the
+     * day of the webhook within completed/, failed/ and skipped/; {@code dir} itself otherwise.
+     */
+    public Path shardFor(Path dir, String filename) {
+        if (layout != StorageLayout.SHARDED || !isSharded(dir)) {
+            return dir;
+        }
+        if (WebhookFilename.parse(filename) instanceof WebhookFilename webhook) {
+            return dir.resolve(SHARD_FORMATTER.format(webhook.timestamp()));
+        }
+        return dir.resolve(UNSORTED_SHARD);
+    }
+
+    /**
+     * Directory for agent output written at {@code time}.
+     */
+    public Path outputsDirFor(Instant time) {
+        if (layout != StorageLayout.SHARDED) {
+            return outputsDir();
+        }
+        return outputsDir().resolve(SHARD_FORMATTER.format(time));
+    }
+
+    /**
+     * Whether {@code dir} is one of the directories split into per-day shards by the sharded layout.
+     */
+    public boolean isSharded(Path dir) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        return List.of(completedDir(), failedDir(), skippedDir(), outputsDir()).stream()
+                .anyMatch(sharded -> sharded.toAbsolutePath().normalize().equals(normalized));
+    }
 }
@@ -1,27 +1,56 @@
 package com.gemini.webhooks.router;
 
+import com.gemini.webhooks.router.dispatch.AdaptiveTimeouts;
+import com.gemini.webhooks.router.dispatch.AgentProcess;
+import com.gemini.webhooks.router.dispatch.AgentWorkerPool;
+import com.gemini.webhooks.router.dispatch.DispatchTrigger;
 import com.gemini.webhooks.router.dispatch.Dispatcher;
+import com.gemini.webhooks.router.dispatch.OutputRetention;
+import com.gemini.webhooks.router.dispatch.PendingWatcher;
+import com.gemini.webhooks.router.dispatch.RunStatsFiles;
 import com.gemini.webhooks.router.download.DynamoDbSource;
 import com.gemini.webhooks.router.download.Downloader;
+import com.gemini.webhooks.router.download.QuietHours;
 import com.gemini.webhooks.router.storage.FileSystemTaskRepository;
+import com.gemini.webhooks.router.storage.JournalTaskRepository;
+import com.gemini.webhooks.router.storage.StorageEngine;
+import com.gemini.webhooks.router.storage.StorageLayoutMigration;
+import com.gemini.webhooks.router.storage.TaskArchive;
 import com.gemini.webhooks.router.storage.TaskRepository;
 import com.gemini.webhooks.router.tasks.AgentTasks;
 import com.gemini.webhooks.router.tasks.FileBasedAgentTasks;
+import com.gemini.webhooks.router.tasks.PendingClassifications;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
     private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // Dispatch cycles run on their own thread so a long download never delays them
+    private static final ExecutorService dispatchLoop = Executors.newSingleThreadExecutor();
     private static final int POLL_INTERVAL_SECONDS = 60;
+    private static final int DISPATCH_INTERVAL_SECONDS = 60;
+    // Periodic safety-net sweep used when pending/ is watched for changes
+    private static final int SWEEP_INTERVAL_SECONDS = 300;
+    private static final int OUTPUT_RETENTION_INTERVAL_MINUTES = 60;
+    private static final int JOURNAL_COMPACTION_INTERVAL_MINUTES = 60;
+    private static final int ARCHIVE_INTERVAL_MINUTES = 60;
+    // Running agents get this long to finish at shutdown before they are terminated; fits systemd's TimeoutStopSec=30
+    private static final Duration AGENT_DRAIN_TIMEOUT = Duration.ofSeconds(10);
 
     public static void main(String[] args) {
         CliArgs cliArgs = new CliArgs();
@@ -32,6 +61,7 @@ public class Main {
                 commandLine.usage(System.out);
                 System.exit(0);
             }
+            cliArgs.validate();
         } catch (CommandLine.ParameterException e) {
             System.err.println(e.getMessage());
             commandLine.usage(System.err);
@@ -42,6 +72,16 @@ public class Main {
 
         FileBasedTasksConfig config = cliArgs.toConfig();
 
+        if (cliArgs.migrateToShardedLayout()) {
+            try {
+                StorageLayoutMigration.migrateToSharded(config);
+                System.exit(0);
+            } catch (IOException e) {
+                logger.error("Failed to migrate to the sharded storage layout", e);
+                System.exit(1);
+            }
+        }
+
         try {
             ensureDirectoriesExist(config);
         } catch (IOException e) {
@@ -49,11 +89,22 @@ public class Main {
             System.exit(1);
         }
 
-        TaskRepository repository = FileSystemTaskRepository.create(config);
-        AgentTasks tasks = new FileBasedAgentTasks(config, repository);
-        Dispatcher dispatcher = new Dispatcher(config, tasks);
-        DynamoDbSource dynamoDbSource = DynamoDbSource.create(config.tableName());
-        Downloader downloader = new Downloader(dynamoDbSource, repository);
+        JournalTaskRepository journal = cliArgs.storageEngine() == StorageEngine.JOURNAL ? openJournal(config) : null;
+        FileSystemTaskRepository files = journal == null ? openFileSystemRepository(config, cliArgs) : null;
+        TaskRepository repository = journal != null ? journal : files;
+        PendingClassifications classifications = new PendingClassifications(cliArgs.priorityPolicy());
+        AgentTasks tasks = new FileBasedAgentTasks(config, repository, classifications, cliArgs.coalesceWindow());
+        AgentProcess agentProcess = createAgentProcess(config, cliArgs);
+        RunStatsFiles runStats = new RunStatsFiles(config.statsDir());
+        logger.info("Restored {} agent run(s) from {}", runStats.restoreInto(agentProcess.metrics()), config.statsDir());
+        agentProcess.metrics().addListener(runStats::append);
+        Dispatcher dispatcher = new Dispatcher(config.outputsDir(), tasks, agentProcess,
+                Executors.newVirtualThreadPerTaskExecutor(), cliArgs.maxConcurrentAgents(),
+                adaptiveTimeouts(cliArgs, agentProcess));
+        DynamoDbSource dynamoDbSource = DynamoDbSource.create(config.tableName(), cliArgs.scanSegments());
+        DispatchTrigger dispatchTrigger = new DispatchTrigger(dispatcher::dispatch, dispatchLoop);
+        Downloader downloader = new Downloader(dynamoDbSource, repository, QuietHours.none(), classifications,
+                filenames -> dispatchTrigger.request());
 
         scheduler.scheduleAtFixedRate(() -> {
             logger.info("Hello, world. The time is {}", Instant.now());
@@ -67,36 +118,152 @@ public class Main {
             }
         }, 0, POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
 
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                dispatcher.dispatch();
-            } catch (Exception e) {
-                logger.error("Dispatcher error", e);
-            }
-        }, 10, 60, TimeUnit.SECONDS);
+        // The journal engine writes nothing to pending/; new downloads still trigger a dispatch directly
+        boolean watchPending = cliArgs.watchPending() && journal == null;
+        PendingWatcher pendingWatcher = watchPending ? startPendingWatcher(config, filenames -> {
+            // Files copied into pending/ by hand join the cached listing; the repository's own are already in it
+            files.pendingCreated(filenames);
+            dispatchTrigger.request();
+        }) : null;
+        int dispatchInterval = pendingWatcher != null ? SWEEP_INTERVAL_SECONDS : DISPATCH_INTERVAL_SECONDS;
+        scheduler.scheduleAtFixedRate(dispatchTrigger::request, 10, dispatchInterval, TimeUnit.SECONDS);
+
+        OutputRetention outputRetention = new OutputRetention(config.outputsDir(), cliArgs.outputRetention(),
+                cliArgs.outputsMaxTotalBytes(), agentProcess::isWriting);
+        if (journal != null) {
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    journal.compact();
+                } catch (Exception e) {
+                    logger.error("Journal compaction error", e);
+                }
+            }, JOURNAL_COMPACTION_INTERVAL_MINUTES, JOURNAL_COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+
+        // The journal engine archives finished tasks itself when it compacts
+        TaskArchive taskArchive = new TaskArchive(config, cliArgs.archiveAfter());
+        if (journal == null && taskArchive.isEnabled()) {
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    taskArchive.compact();
+                } catch (Exception e) {
+                    logger.error("Task archive compaction error", e);
+                }
+            }, ARCHIVE_INTERVAL_MINUTES, ARCHIVE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+
+        if (outputRetention.isEnabled()) {
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    outputRetention.sweep();
+                } catch (Exception e) {
+                    logger.error("Output retention error", e);
+                }
+            }, 1, OUTPUT_RETENTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Shutting down Webhooks Router Daemon...");
+            if (pendingWatcher != null) {
+                pendingWatcher.close();
+            }
             scheduler.shutdown();
+            dispatchLoop.shutdown();
             try {
                 if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
                     scheduler.shutdownNow();
                 }
+                if (!dispatchLoop.awaitTermination(5, TimeUnit.SECONDS)) {
+                    dispatchLoop.shutdownNow();
+                }
             } catch (InterruptedException e) {
                 scheduler.shutdownNow();
+                dispatchLoop.shutdownNow();
             }
+            dispatcher.shutdown(AGENT_DRAIN_TIMEOUT);
             dynamoDbSource.close();
+            closeJournal(journal);
             logger.info("Shutdown complete.");
         }));
     }
 
+    private static AgentProcess createAgentProcess(FileBasedTasksConfig config, CliArgs cliArgs) {
+        Optional<List<String>> workerCommand = cliArgs.agentWorkerCommand();
+        if (workerCommand.isEmpty()) {
+            return AgentProcess.create(config.repoBaseDir(), cliArgs.agentTimeout(), cliArgs.payloadDelivery(),
+                    cliArgs.outputLimits());
+        }
+        try {
+            AgentWorkerPool pool = AgentWorkerPool.start(workerCommand.get(), config.repoBaseDir(),
+                    cliArgs.agentWorkers(), cliArgs.agentWorkerMaxTasks());
+            logger.info("Started {} agent workers: {}", cliArgs.agentWorkers(), workerCommand.get());
+            return AgentProcess.createPooled(config.repoBaseDir(), cliArgs.agentTimeout(), pool, cliArgs.outputLimits());
+        } catch (IOException e) {
+            logger.error("Failed to start agent workers — falling back to one process per webhook", e);
+            return AgentProcess.create(config.repoBaseDir(), cliArgs.agentTimeout(), cliArgs.payloadDelivery(),
+                    cliArgs.outputLimits());
+        }
+    }
+
+    private static JournalTaskRepository openJournal(FileBasedTasksConfig config) {
+        try {
+            return JournalTaskRepository.create(config);
+        } catch (IOException e) {
+            logger.error("Failed to open task journal", e);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static FileSystemTaskRepository openFileSystemRepository(FileBasedTasksConfig config, CliArgs cliArgs) {
+        FileSystemTaskRepository repository = FileSystemTaskRepository.create(config, cliArgs.groupCommit(),
+                cliArgs.listingReconcileInterval());
+        try {
+            repository.discardIncomplete();
+        } catch (IOException e) {
+            logger.error("Failed to clear {}", config.incomingDir(), e);
+            System.exit(1);
+        }
+        return repository;
+    }
+
+    private static void closeJournal(JournalTaskRepository journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Failed to close task journal", e);
+        }
+    }
+
+    private static AdaptiveTimeouts adaptiveTimeouts(CliArgs cliArgs, AgentProcess agentProcess) {
+        if (!cliArgs.adaptiveTimeouts()) {
+            return AdaptiveTimeouts.disabled();
+        }
+        return AdaptiveTimeouts.create(agentProcess.metrics(), cliArgs.adaptiveTimeoutMultiplier(),
+                cliArgs.adaptiveTimeoutFloor(), cliArgs.adaptiveTimeoutCeiling());
+    }
+
+    private static PendingWatcher startPendingWatcher(FileBasedTasksConfig config, Consumer<Set<String>> onChange) {
+        try {
+            return PendingWatcher.start(config.pendingDir(), onChange);
+        } catch (IOException e) {
+            logger.error("Failed to watch {} — falling back to periodic dispatch", config.pendingDir(), e);
+            return null;
+        }
+    }
+
     private static void ensureDirectoriesExist(FileBasedTasksConfig config) throws IOException {
         Files.createDirectories(config.pendingDir());
+        Files.createDirectories(config.incomingDir());
         Files.createDirectories(config.processingDir());
         Files.createDirectories(config.completedDir());
         Files.createDirectories(config.failedDir());
         Files.createDirectories(config.outputsDir());
         Files.createDirectories(config.skippedDir());
+        Files.createDirectories(config.statsDir());
         logger.info("Initialized storage directories at: {}", config.storageRoot());
     }
 }
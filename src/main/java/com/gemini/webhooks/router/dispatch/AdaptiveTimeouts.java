@@ -0,0 +1,90 @@
+package com.gemini.webhooks.router.dispatch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Derives each repository's agent timeout from how long its successful runs took: the 99th percentile of
+ * recent run durations times a multiplier, kept between a floor and a ceiling.
+ * <p>
+ * Repositories with fewer than {@code minRuns} successful runs have no adaptive timeout and use the
+ * configured one. A run that times out is not a success, so runs that keep timing out would never
+ * change that timeout: after a timeout the next run instead gets at least twice as long as the timed-out
+ * one took, up to the ceiling, until a run exits on its own again.
+ */
+public class AdaptiveTimeouts {
+
+    public static final double DEFAULT_MULTIPLIER = 3.0;
+    public static final int DEFAULT_MIN_RUNS = 20;
+
+    private final AgentMetrics metrics;
+    private final double multiplier;
+    private final Duration floor;
+    private final Duration ceiling;
+    private final int minRuns;
+    private final boolean enabled;
+
+    public static AdaptiveTimeouts disabled() {
+        return new AdaptiveTimeouts(new AgentMetrics(), DEFAULT_MULTIPLIER, Duration.ZERO, Duration.ZERO, DEFAULT_MIN_RUNS, false);
+    }
+
+    public static AdaptiveTimeouts create(AgentMetrics metrics, double multiplier, Duration floor, Duration ceiling) {
+        return create(metrics, multiplier, floor, ceiling, DEFAULT_MIN_RUNS);
+    }
+
+    public static AdaptiveTimeouts create(AgentMetrics metrics, double multiplier, Duration floor, Duration ceiling,
+                                          int minRuns) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must be at least 1, got " + multiplier);
+        }
+        if (floor.compareTo(ceiling) > 0) {
+            throw new IllegalArgumentException("floor " + floor + " is above ceiling " + ceiling);
+        }
+        return new AdaptiveTimeouts(metrics, multiplier, floor, ceiling, minRuns, true);
+    }
+
+    private AdaptiveTimeouts(AgentMetrics metrics, double multiplier, Duration floor, Duration ceiling, int minRuns,
+                             boolean enabled) {
+        this.metrics = metrics;
+        this.multiplier = multiplier;
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.minRuns = minRuns;
+        this.enabled = enabled;
+    }
+
+    public Optional<Duration> timeoutFor(String repoName) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<AgentMetrics.RepoStats> stats = metrics.stats(repoName);
+        Optional<Duration> fromHistory = stats
+                .map(AgentMetrics.RepoStats::recentSuccessWallMillis)
+                .filter(durations -> durations.size() >= minRuns)
+                .map(durations -> clamp(Duration.ofMillis((long) (p99(durations) * multiplier))));
+        Optional<Duration> afterTimeout = stats
+                .filter(repoStats -> repoStats.consecutiveTimeouts() > 0)
+                .map(repoStats -> clamp(Duration.ofMillis(repoStats.lastTimeoutWallMillis()).multipliedBy(2)));
+        if (afterTimeout.isPresent() && fromHistory.isPresent()) {
+            return afterTimeout.get().compareTo(fromHistory.get()) > 0 ? afterTimeout : fromHistory;
+        }
+        return afterTimeout.or(() -> fromHistory);
+    }
+
+    // Nearest-rank percentile
+    private static long p99(List<Long> durations) {
+        List<Long> sorted = new ArrayList<>(durations);
+        sorted.sort(null);
+        int rank = (int) Math.ceil(0.99 * sorted.size());
+        return sorted.get(rank - 1);
+    }
+
+    private Duration clamp(Duration timeout) {
+        if (timeout.compareTo(floor) < 0) {
+            return floor;
+        }
+        return timeout.compareTo(ceiling) > 0 ? ceiling : timeout;
+    }
+}
@@ -0,0 +1,131 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process registry of agent run metrics, aggregated per repository.
+ */
+public class AgentMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentMetrics.class);
+    // Successful wall times kept per repository for percentiles
+    static final int RECENT_RUNS = 200;
+
+    private final Map<String, RepoAggregate> byRepo = new ConcurrentHashMap<>();
+    private final List<Consumer<RunMetrics>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Calls {@code listener} with every run recorded from now on, on the thread that records it.
+     */
+    public void addListener(Consumer<RunMetrics> listener) {
+        listeners.add(listener);
+    }
+
+    public void record(RunMetrics run) {
+        restore(run);
+        logger.info("Agent run for {}: {} exit code {}, {} ms wall, {} ms CPU, {} bytes peak RSS, {} bytes output",
+                run.repoName(), run.outcome(), run.exitCode(), run.wallMillis(), run.cpuMillis(),
+                run.peakRssBytes(), run.outputBytes());
+        for (Consumer<RunMetrics> listener : listeners) {
+            try {
+                listener.accept(run);
+            } catch (RuntimeException e) {
+                logger.error("Agent metrics listener failed for {}", run.repoName(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds a run recorded before this process started, without logging it or notifying listeners.
+     */
+    void restore(RunMetrics run) {
+        byRepo.computeIfAbsent(run.repoName(), repo -> new RepoAggregate()).add(run);
+    }
+
+    public Optional<RepoStats> stats(String repoName) {
+        return Optional.ofNullable(byRepo.get(repoName)).map(RepoAggregate::snapshot);
+    }
+
+    /**
+     * Stats of every repository with at least one recorded run, by repository name.
+     */
+    public Map<String, RepoStats> snapshot() {
+        Map<String, RepoStats> snapshot = new TreeMap<>();
+        byRepo.forEach((repo, aggregate) -> snapshot.put(repo, aggregate.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * Totals of every run recorded for one repository. Maximums ignore runs where the value is unknown.
+     *
+     * @param consecutiveTimeouts     runs that timed out since the last run that exited on its own
+     * @param lastTimeoutWallMillis   wall time of the latest of those runs, or 0 when there are none
+     * @param recentSuccessWallMillis wall times of the latest {@value AgentMetrics#RECENT_RUNS} runs that exited
+     *                                with code 0, oldest first
+     */
+    public record RepoStats(long runs, long failures, long timeouts, long consecutiveTimeouts,
+                            long lastTimeoutWallMillis, long totalWallMillis, long maxWallMillis,
+                            long totalCpuMillis, long maxPeakRssBytes, long totalOutputBytes,
+                            List<Long> recentSuccessWallMillis) {
+
+        public long meanWallMillis() {
+            return runs == 0 ? 0 : totalWallMillis / runs;
+        }
+    }
+
+    private static final class RepoAggregate {
+        private long runs;
+        private long failures;
+        private long timeouts;
+        private long consecutiveTimeouts;
+        private long lastTimeoutWallMillis;
+        private long totalWallMillis;
+        private long maxWallMillis;
+        private long totalCpuMillis;
+        private long maxPeakRssBytes = RunMetrics.UNKNOWN;
+        private long totalOutputBytes;
+        private final Deque<Long> recentSuccessWallMillis = new ArrayDeque<>();
+
+        synchronized void add(RunMetrics run) {
+            runs++;
+            if (run.isFailure()) {
+                failures++;
+            }
+            if (run.outcome() == RunMetrics.Outcome.TIMED_OUT) {
+                timeouts++;
+                consecutiveTimeouts++;
+                lastTimeoutWallMillis = run.wallMillis();
+            } else if (run.outcome() == RunMetrics.Outcome.EXITED) {
+                consecutiveTimeouts = 0;
+                lastTimeoutWallMillis = 0;
+            }
+            totalWallMillis += run.wallMillis();
+            maxWallMillis = Math.max(maxWallMillis, run.wallMillis());
+            totalCpuMillis += Math.max(0, run.cpuMillis());
+            maxPeakRssBytes = Math.max(maxPeakRssBytes, run.peakRssBytes());
+            totalOutputBytes += Math.max(0, run.outputBytes());
+            if (!run.isFailure()) {
+                recentSuccessWallMillis.addLast(run.wallMillis());
+                if (recentSuccessWallMillis.size() > RECENT_RUNS) {
+                    recentSuccessWallMillis.removeFirst();
+                }
+            }
+        }
+
+        synchronized RepoStats snapshot() {
+            return new RepoStats(runs, failures, timeouts, consecutiveTimeouts, lastTimeoutWallMillis, totalWallMillis, maxWallMillis, totalCpuMillis,
+                    maxPeakRssBytes, totalOutputBytes, List.copyOf(recentSuccessWallMillis));
+        }
+    }
+}
@@ -3,26 +3,92 @@ package com.gemini.webhooks.router.dispatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class AgentProcess {
     private static final Logger logger = LoggerFactory.getLogger(AgentProcess.class);
-    private static final String AGENT_COMMAND = "gemini";
-    private static final long AGENT_TIMEOUT_MINUTES = 5;
+    private static final List<String> AGENT_COMMAND = List.of("gemini", "-y");
+    static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(5);
+    static final Duration TERMINATION_GRACE = Duration.ofSeconds(10);
+    // Linux rejects a single argument longer than 128 KiB (MAX_ARG_STRLEN) with E2BIG
+    static final int MAX_ARGUMENT_BYTES = 100 * 1024;
 
     private final Path repoBaseDir;
+    private final Duration defaultTimeout;
+    private final List<String> command;
+    private final PayloadDelivery delivery;
+    private final OutputLimits outputLimits;
     private final ProcessResult nullResult;
+    private final AgentWorkerPool workerPool;
     private final List<OutputTracker> trackers = new ArrayList<>();
+    // Each running agent, mapped to a future that completes once its process (or worker task) is gone
+    private final Map<CompletableFuture<ProcessResult>, CompletableFuture<?>> running = new ConcurrentHashMap<>();
+    // Output of agents that are still running, keyed by output file, for tail()
+    private final Map<Path, OutputCapture> capturing = new ConcurrentHashMap<>();
+    private final AgentMetrics metrics = new AgentMetrics();
 
     public static AgentProcess create(Path repoBaseDir) {
-        return new AgentProcess(repoBaseDir, null);
+        return create(repoBaseDir, DEFAULT_TIMEOUT);
+    }
+
+    public static AgentProcess create(Path repoBaseDir, Duration defaultTimeout) {
+        return create(repoBaseDir, defaultTimeout, PayloadDelivery.ARGUMENT);
+    }
+
+    public static AgentProcess create(Path repoBaseDir, Duration defaultTimeout, PayloadDelivery delivery) {
+        return create(repoBaseDir, defaultTimeout, delivery, OutputLimits.DEFAULT);
+    }
+
+    public static AgentProcess create(Path repoBaseDir, Duration defaultTimeout, PayloadDelivery delivery,
+                                      OutputLimits outputLimits) {
+        return create(repoBaseDir, defaultTimeout, AGENT_COMMAND, delivery, outputLimits);
+    }
+
+    static AgentProcess create(Path repoBaseDir, Duration defaultTimeout, List<String> command) {
+        return create(repoBaseDir, defaultTimeout, command, PayloadDelivery.ARGUMENT);
+    }
+
+    /**
+     * @param command program and leading arguments; the payload is delivered after them according to {@code delivery}
+     */
+    static AgentProcess create(Path repoBaseDir, Duration defaultTimeout, List<String> command, PayloadDelivery delivery) {
+        return create(repoBaseDir, defaultTimeout, command, delivery, OutputLimits.DEFAULT);
+    }
+
+    static AgentProcess create(Path repoBaseDir, Duration defaultTimeout, List<String> command, PayloadDelivery delivery,
+                               OutputLimits outputLimits) {
+        return new AgentProcess(repoBaseDir, defaultTimeout, command, delivery, outputLimits, null, null);
+    }
+
+    /**
+     * Runs agents on the warm workers of {@code workerPool} instead of starting a process per webhook.
+     * The pool is closed when this AgentProcess shuts down.
+     */
+    public static AgentProcess createPooled(Path repoBaseDir, Duration defaultTimeout, AgentWorkerPool workerPool) {
+        return createPooled(repoBaseDir, defaultTimeout, workerPool, OutputLimits.DEFAULT);
+    }
+
+    public static AgentProcess createPooled(Path repoBaseDir, Duration defaultTimeout, AgentWorkerPool workerPool,
+                                            OutputLimits outputLimits) {
+        return new AgentProcess(repoBaseDir, defaultTimeout, AGENT_COMMAND, PayloadDelivery.ARGUMENT, outputLimits,
+                workerPool, null);
     }
 
     public static AgentProcess createNull() {
@@ -30,14 +96,28 @@ public class AgentProcess {
     }
 
     public static AgentProcess createNull(ProcessResult result) {
-        return new AgentProcess(null, result);
+        return new AgentProcess(null, DEFAULT_TIMEOUT, AGENT_COMMAND, PayloadDelivery.ARGUMENT, OutputLimits.DEFAULT,
+                null, result);
     }
 
-    private AgentProcess(Path repoBaseDir, ProcessResult nullResult) {
+    private AgentProcess(Path repoBaseDir, Duration defaultTimeout, List<String> command, PayloadDelivery delivery,
+                         OutputLimits outputLimits, AgentWorkerPool workerPool, ProcessResult nullResult) {
         this.repoBaseDir = repoBaseDir;
+        this.defaultTimeout = defaultTimeout;
+        this.command = List.copyOf(command);
+        this.delivery = delivery;
+        this.outputLimits = outputLimits;
+        this.workerPool = workerPool;
         this.nullResult = nullResult;
     }
 
+    /**
+     * Metrics of every agent run started by this AgentProcess, including runs that timed out or were cancelled.
+     */
+    public AgentMetrics metrics() {
+        return metrics;
+    }
+
     public OutputTracker trackOutput() {
         OutputTracker tracker = new OutputTracker();
         trackers.add(tracker);
@@ -45,19 +125,58 @@ public class AgentProcess {
     }
 
     public ProcessResult execute(String repoName, String webhookContent, Path outputFile) {
-        trackers.forEach(t -> t.add(new ExecuteRecord(repoName, webhookContent, outputFile)));
+        return executeAsync(repoName, webhookContent, outputFile).join();
+    }
+
+    public CompletableFuture<ProcessResult> executeAsync(String repoName, String webhookContent, Path outputFile) {
+        return executeAsync(repoName, webhookContent, outputFile, defaultTimeout);
+    }
+
+    /**
+     * Launches the agent and returns without waiting for it. The future completes when the process exits.
+     * Once {@code timeout} elapses the process is asked to terminate and killed if it is still alive after
+     * a grace period; the future then completes with a failure when it has exited. Cancelling the future
+     * terminates the process the same way.
+     */
+    public CompletableFuture<ProcessResult> executeAsync(String repoName, String webhookContent, Path outputFile,
+                                                         Duration timeout) {
+        trackers.forEach(t -> t.add(new ExecuteRecord(repoName, webhookContent, outputFile, timeout)));
 
         if (nullResult != null) {
-            return nullResult;
+            return CompletableFuture.completedFuture(nullResult);
         }
 
         Path repoDir = repoBaseDir.resolve(repoName);
 
         if (!Files.isDirectory(repoDir)) {
             logger.error("Repository directory not found: {}", repoDir);
-            return ProcessResult.failure("Repository directory not found: " + repoDir);
+            return CompletableFuture.completedFuture(ProcessResult.failure("Repository directory not found: " + repoDir));
         }
 
+        if (workerPool != null) {
+            logger.info("Queueing agent task for repository: {} on the worker pool", repoName);
+            AgentWorkerPool.Run result = workerPool.submit(repoName, repoDir, webhookContent, outputFile, timeout,
+                    outputLimits);
+            running.put(result, result.handle((ignored, error) -> null));
+            result.whenComplete((completed, error) -> {
+                running.remove(result);
+                if (completed != null && completed.metrics() != null) {
+                    metrics.record(completed.metrics());
+                } else if (error instanceof CancellationException && result.startedAt() != null) {
+                    // A run cancelled while still waiting for a worker never ran, so it is not recorded
+                    metrics.record(RunMetrics.of(repoName, result.startedAt(), Duration.between(result.startedAt(), Instant.now()),
+                            RunMetrics.Outcome.CANCELLED));
+                }
+            });
+            return result;
+        }
+
+        PayloadDelivery mode = deliveryFor(webhookContent);
+        Path payloadFile = mode == PayloadDelivery.FILE ? payloadFileFor(outputFile) : null;
+        Instant startedAt = Instant.now();
+        long startNanos = System.nanoTime();
+        Process process;
+        OutputCapture capture;
         try {
             // Ensure output file parent directory exists
             Files.createDirectories(outputFile.getParent());
@@ -65,39 +184,227 @@ public class AgentProcess {
             logger.info("Launching agent for repository: {} in directory: {}", repoName, repoDir);
             logger.info("Agent output will be written to: {}", outputFile);
 
-            File outputFileObj = outputFile.toFile();
-            Process process = new ProcessBuilder(AGENT_COMMAND, "-y", webhookContent)
-                    .directory(repoDir.toFile())
-                    .redirectOutput(ProcessBuilder.Redirect.to(outputFileObj))
-                    .redirectError(ProcessBuilder.Redirect.to(outputFileObj))
-                    .start();
-
-            boolean finished = process.waitFor(AGENT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
-            if (!finished) {
-                logger.error("Agent process timed out after {} minutes", AGENT_TIMEOUT_MINUTES);
-                process.destroyForcibly();
-                return ProcessResult.failure("Agent process timed out");
+            List<String> commandLine = new ArrayList<>(command);
+            switch (mode) {
+                case ARGUMENT -> commandLine.add(webhookContent);
+                case FILE -> {
+                    Files.writeString(payloadFile, webhookContent);
+                    commandLine.add("@" + payloadFile);
+                }
+                case STDIN -> {
+                    // Payload follows on stdin once the process is running
+                }
             }
-
-            int exitCode = process.exitValue();
-            logger.info("Agent process completed with exit code: {}", exitCode);
-
-            if (exitCode == 0) {
-                return ProcessResult.success();
-            } else {
-                return ProcessResult.failure("Agent process exited with code: " + exitCode);
+            capture = OutputCapture.open(outputFile, outputLimits.maxBytes());
+            try {
+                process = new ProcessBuilder(commandLine)
+                        .directory(repoDir.toFile())
+                        .redirectErrorStream(true)
+                        .start();
+            } catch (IOException e) {
+                capture.close();
+                throw e;
             }
         } catch (IOException e) {
             logger.error("Failed to launch agent process", e);
-            return ProcessResult.failure("Failed to launch agent: " + e.getMessage());
+            deletePayloadFile(payloadFile);
+            return CompletableFuture.completedFuture(ProcessResult.failure("Failed to launch agent: " + e.getMessage()));
+        }
+        if (mode == PayloadDelivery.STDIN) {
+            streamToStdin(process, webhookContent);
+        }
+        capturing.put(outputFile, capture);
+        ResourceSampler sampler = ResourceSampler.start(process);
+        CompletableFuture<Void> drained = CompletableFuture.runAsync(
+                () -> capture.drain(process.getInputStream()), runnable -> Thread.ofVirtual().start(runnable));
+
+        CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+        running.put(result, process.onExit());
+        // Completes with true when the timeout elapses first; completing it with false on exit cancels the timer
+        CompletableFuture<Boolean> deadline = new CompletableFuture<Boolean>()
+                .completeOnTimeout(true, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        CompletableFuture<Long> exitedAt = process.onExit().thenApply(exited -> {
+            deadline.complete(false);
+            return System.nanoTime();
+        });
+        // The output file is complete only once the pipe has been read to the end, after the process exits
+        CompletableFuture<Void> outputRead = drained.exceptionally(error -> {
+            logger.error("Failed to read output of agent for {}", repoName, error);
+            return null;
+        });
+        exitedAt.thenCombine(outputRead, (nanos, ignored) -> nanos).thenAccept(nanos -> {
+            // The result must complete on every path, or the run would keep its slot and repository lock forever
+            try {
+                deletePayloadFile(payloadFile);
+                capturing.remove(outputFile, capture);
+                compressIfEnabled(outputFile);
+                boolean timedOut = deadline.join();
+                RunMetrics run = new RunMetrics(repoName, startedAt, TimeUnit.NANOSECONDS.toMillis(nanos - startNanos),
+                        sampler.cpuMillis(), sampler.peakRssBytes(), capture.totalBytes(), process.exitValue(),
+                        outcomeOf(result, timedOut));
+                metrics.record(run);
+                ProcessResult processResult = timedOut
+                        ? ProcessResult.failure("Agent process timed out after " + timeout)
+                        : resultOf(process.exitValue());
+                result.complete(processResult.withMetrics(run));
+            } catch (RuntimeException e) {
+                logger.error("Failed to finish agent run for {}", repoName, e);
+                result.complete(ProcessResult.failure("Failed to finish agent run: " + e.getMessage()));
+            } finally {
+                result.complete(ProcessResult.failure("Failed to finish agent run"));
+            }
+        });
+        // The run keeps its slot until the process has actually exited
+        deadline.thenAccept(expired -> {
+            if (expired && !result.isDone()) {
+                logger.error("Agent process for {} timed out after {}", repoName, timeout);
+                terminate(process);
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            running.remove(result);
+            if (process.isAlive()) {
+                terminate(process);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The most recent output of the agent writing to {@code outputFile}, while it is still running.
+     * Runs on the worker pool report their output only when they finish, so they have no tail.
+     */
+    public Optional<String> tail(Path outputFile) {
+        return Optional.ofNullable(capturing.get(outputFile)).map(OutputCapture::tail);
+    }
+
+    /**
+     * Whether an agent is still writing to {@code outputFile}.
+     */
+    public boolean isWriting(Path outputFile) {
+        return capturing.containsKey(outputFile);
+    }
+
+    /**
+     * Waits up to {@code drainTimeout} for running agents to finish, then cancels the rest
+     * and waits for them to terminate.
+     */
+    public void shutdown(Duration drainTimeout) {
+        drain(drainTimeout);
+        if (workerPool != null) {
+            workerPool.close();
+        }
+    }
+
+    private void drain(Duration drainTimeout) {
+        if (running.isEmpty()) {
+            return;
+        }
+        logger.info("Waiting up to {} for {} running agent(s)", drainTimeout, running.size());
+        try {
+            CompletableFuture.allOf(running.keySet().toArray(CompletableFuture[]::new))
+                    .get(drainTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return;
+        } catch (TimeoutException | ExecutionException e) {
+            // Cancel whatever is still running below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<CompletableFuture<?>> remaining = List.copyOf(running.values());
+        logger.warn("Terminating {} agent(s) still running at shutdown", remaining.size());
+        running.keySet().forEach(run -> run.cancel(true));
+        try {
+            CompletableFuture.allOf(remaining.toArray(CompletableFuture[]::new))
+                    .get(TERMINATION_GRACE.plusSeconds(1).toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            logger.error("Agent processes did not exit in time", e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            logger.error("Agent process interrupted", e);
-            return ProcessResult.failure("Agent process interrupted: " + e.getMessage());
         }
     }
 
-    public record ExecuteRecord(String repoName, String webhookContent, Path outputFile) {}
+    private PayloadDelivery deliveryFor(String webhookContent) {
+        if (delivery == PayloadDelivery.ARGUMENT
+                && webhookContent.getBytes(StandardCharsets.UTF_8).length > MAX_ARGUMENT_BYTES) {
+            logger.info("Payload too large for a command-line argument, streaming it over stdin");
+            return PayloadDelivery.STDIN;
+        }
+        return delivery;
+    }
+
+    private static Path payloadFileFor(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".payload.json");
+    }
+
+    // Written from its own thread: a pipe only buffers so much, and the agent may read it slowly or not at all
+    private static void streamToStdin(Process process, String webhookContent) {
+        Thread.ofVirtual().start(() -> {
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(webhookContent.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                logger.warn("Agent process {} closed stdin before reading the whole payload", process.pid());
+            }
+        });
+    }
+
+    // A result cancelled before the process exited, or a timeout, is what ended the process
+    private static RunMetrics.Outcome outcomeOf(CompletableFuture<ProcessResult> result, boolean timedOut) {
+        if (result.isCancelled()) {
+            return RunMetrics.Outcome.CANCELLED;
+        }
+        return timedOut ? RunMetrics.Outcome.TIMED_OUT : RunMetrics.Outcome.EXITED;
+    }
+
+    private void compressIfEnabled(Path outputFile) {
+        if (!outputLimits.compress()) {
+            return;
+        }
+        try {
+            OutputCapture.compress(outputFile);
+        } catch (IOException e) {
+            logger.warn("Failed to compress agent output: {}", outputFile, e);
+        }
+    }
+
+    private static void deletePayloadFile(Path payloadFile) {
+        if (payloadFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(payloadFile);
+        } catch (IOException e) {
+            logger.warn("Failed to delete payload file: {}", payloadFile, e);
+        }
+    }
+
+    private static ProcessResult resultOf(int exitCode) {
+        logger.info("Agent process completed with exit code: {}", exitCode);
+
+        if (exitCode == 0) {
+            return ProcessResult.success();
+        } else {
+            return ProcessResult.failure("Agent process exited with code: " + exitCode);
+        }
+    }
+
+    // SIGTERM first so the agent can clean up; SIGKILL whatever is left after the grace period.
+    // Signalled through its handle: Process.destroy() would also close the pipe still carrying its output.
+    private static void terminate(Process process) {
+        List<ProcessHandle> descendants = process.descendants().toList();
+        process.toHandle().destroy();
+        descendants.forEach(ProcessHandle::destroy);
+        process.onExit()
+                .orTimeout(TERMINATION_GRACE.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(timeout -> {
+                    logger.warn("Agent process {} ignored SIGTERM, killing it", process.pid());
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.toHandle().destroyForcibly();
+                    return process;
+                });
+    }
+
+    public record ExecuteRecord(String repoName, String webhookContent, Path outputFile, Duration timeout) {}
 
     public static class OutputTracker {
         private final List<ExecuteRecord> data = new ArrayList<>();
@@ -111,13 +418,20 @@ public class AgentProcess {
         }
     }
 
-    public record ProcessResult(boolean isSuccess, String errorMessage) {
+    /**
+     * @param metrics resources used by the run, or {@code null} when no agent ran
+     */
+    public record ProcessResult(boolean isSuccess, String errorMessage, RunMetrics metrics) {
         public static ProcessResult success() {
-            return new ProcessResult(true, null);
+            return new ProcessResult(true, null, null);
         }
 
         public static ProcessResult failure(String errorMessage) {
-            return new ProcessResult(false, errorMessage);
+            return new ProcessResult(false, errorMessage, null);
+        }
+
+        public ProcessResult withMetrics(RunMetrics metrics) {
+            return new ProcessResult(isSuccess, errorMessage, metrics);
         }
     }
 }
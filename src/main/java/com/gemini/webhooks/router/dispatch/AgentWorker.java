@@ -0,0 +1,154 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One long-lived agent worker process speaking {@link WorkerProtocol} over its stdin and stdout.
+ * Not thread-safe; the pool hands a worker to one task at a time.
+ */
+class AgentWorker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentWorker.class);
+
+    private final Process process;
+    private final DataOutputStream in;
+    private final DataInputStream out;
+    private long nextId;
+    private int completedTasks;
+    private Instant lastUsed = Instant.now();
+
+    private AgentWorker(Process process) {
+        this.process = process;
+        this.in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    static AgentWorker start(List<String> command, Path workDir) throws IOException {
+        Process process = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        logger.info("Started agent worker {}", process.pid());
+        return new AgentWorker(process);
+    }
+
+    /**
+     * Sends the payload to the worker and blocks until it reports the result.
+     */
+    WorkerResult run(String repoName, Path repoDir, String payload) throws IOException {
+        long id = nextId++;
+        WorkerProtocol.write(in, WorkerProtocol.task(id, repoName, repoDir, payload));
+        ObjectNode reply = WorkerProtocol.awaitReply(out, id, "result");
+        completedTasks++;
+        lastUsed = Instant.now();
+        return new WorkerResult(reply.path("exitCode").asInt(1), reply.path("output").asText(""));
+    }
+
+    /**
+     * True if the worker is alive and answers a ping within {@code timeout}.
+     */
+    boolean ping(Duration timeout) {
+        if (!process.isAlive()) {
+            return false;
+        }
+        long id = nextId++;
+        CompletableFuture<Boolean> pong = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                WorkerProtocol.write(in, WorkerProtocol.ping(id));
+                WorkerProtocol.awaitReply(out, id, "pong");
+                pong.complete(true);
+            } catch (IOException e) {
+                pong.complete(false);
+            }
+        });
+        try {
+            boolean healthy = pong.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            lastUsed = Instant.now();
+            return healthy;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    int completedTasks() {
+        return completedTasks;
+    }
+
+    Instant lastUsed() {
+        return lastUsed;
+    }
+
+    long pid() {
+        return process.pid();
+    }
+
+    /**
+     * Closing stdin asks the worker to exit; it is terminated if it has not done so within the grace period.
+     */
+    @Override
+    public void close() {
+        stop();
+        awaitExit(Instant.now().plus(AgentProcess.TERMINATION_GRACE));
+    }
+
+    /**
+     * Asks the worker to exit by closing its stdin, without waiting for it.
+     */
+    void stop() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Worker already gone
+        }
+    }
+
+    /**
+     * Waits until {@code deadline} for the worker to exit and kills it if it is still running then.
+     */
+    void awaitExit(Instant deadline) {
+        try {
+            long remainingMillis = Math.max(0, Duration.between(Instant.now(), deadline).toMillis());
+            if (!process.waitFor(remainingMillis, TimeUnit.MILLISECONDS)) {
+                kill();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kill();
+        }
+    }
+
+    /**
+     * Stops the worker at once, e.g. when its task timed out or was cancelled.
+     */
+    void kill() {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    record WorkerResult(int exitCode, String output) {
+    }
+}
@@ -0,0 +1,289 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of warm agent workers started from one command, so that a task does not pay the
+ * agent's start-up cost. Tasks wait in FIFO order for an idle worker. A worker that has been idle
+ * for a while is pinged before it is reused, and is replaced after a set number of tasks, when it
+ * fails a health check, or when its task times out or is cancelled.
+ */
+public class AgentWorkerPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentWorkerPool.class);
+    static final Duration HEALTH_CHECK_AFTER_IDLE = Duration.ofSeconds(30);
+    static final Duration PING_TIMEOUT = Duration.ofSeconds(5);
+
+    private final List<String> command;
+    private final Path workDir;
+    private final int maxTasksPerWorker;
+    private final Deque<AgentWorker> idle = new ArrayDeque<>();
+    private final Deque<Job> waiting = new ArrayDeque<>();
+    private final List<AgentWorker> all = new ArrayList<>();
+    private boolean closed;
+
+    private AgentWorkerPool(List<String> command, Path workDir, int maxTasksPerWorker) {
+        this.command = List.copyOf(command);
+        this.workDir = workDir;
+        this.maxTasksPerWorker = maxTasksPerWorker;
+    }
+
+    /**
+     * Starts {@code size} workers running {@code command} in {@code workDir}.
+     *
+     * @param maxTasksPerWorker tasks a worker handles before it is replaced by a fresh one
+     */
+    public static AgentWorkerPool start(List<String> command, Path workDir, int size, int maxTasksPerWorker) throws IOException {
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("Worker command must not be empty");
+        }
+        if (size < 1 || maxTasksPerWorker < 1) {
+            throw new IllegalArgumentException("Pool size and tasks per worker must be at least 1");
+        }
+        AgentWorkerPool pool = new AgentWorkerPool(command, workDir, maxTasksPerWorker);
+        try {
+            for (int i = 0; i < size; i++) {
+                pool.release(pool.spawn());
+            }
+        } catch (IOException e) {
+            pool.close();
+            throw e;
+        }
+        return pool;
+    }
+
+    /**
+     * Queues the payload for the next idle worker. The worker's output is written to {@code outputFile}.
+     * The returned run fails once {@code timeout} has elapsed since a worker took it, so time spent
+     * waiting for a worker does not count; a timed-out or cancelled run kills its worker, which is then
+     * replaced.
+     */
+    Run submit(String repoName, Path repoDir, String payload, Path outputFile, Duration timeout) {
+        return submit(repoName, repoDir, payload, outputFile, timeout, OutputLimits.DEFAULT);
+    }
+
+    Run submit(String repoName, Path repoDir, String payload, Path outputFile, Duration timeout, OutputLimits limits) {
+        Run result = new Run();
+        Job job = new Job(repoName, repoDir, payload, outputFile, limits, timeout, result);
+        synchronized (this) {
+            if (closed) {
+                result.complete(AgentProcess.ProcessResult.failure("Agent worker pool is closed"));
+                return result;
+            }
+            waiting.addLast(job);
+        }
+        assignWork();
+        return result;
+    }
+
+    synchronized int idleWorkers() {
+        return idle.size();
+    }
+
+    private void assignWork() {
+        while (true) {
+            Job job;
+            AgentWorker worker;
+            synchronized (this) {
+                waiting.removeIf(queued -> queued.result().isDone());
+                if (closed || waiting.isEmpty() || idle.isEmpty()) {
+                    return;
+                }
+                job = waiting.pollFirst();
+                worker = idle.pollFirst();
+            }
+            Thread.ofVirtual().name("agent-worker-" + worker.pid()).start(() -> runJob(worker, job));
+        }
+    }
+
+    private void runJob(AgentWorker worker, Job job) {
+        AgentWorker current = worker;
+        if (!current.isAlive() || idleFor(current).compareTo(HEALTH_CHECK_AFTER_IDLE) > 0 && !current.ping(PING_TIMEOUT)) {
+            logger.warn("Agent worker {} failed its health check, replacing it", current.pid());
+            current = replace(current);
+            if (current == null) {
+                job.result().complete(AgentProcess.ProcessResult.failure("No healthy agent worker available"));
+                return;
+            }
+        }
+        if (job.result().isDone()) {
+            release(current);
+            return;
+        }
+
+        AgentWorker running = current;
+        job.start();
+        job.result().whenComplete((ignored, error) -> {
+            if (!job.finishedByWorker()) {
+                running.kill();
+            }
+        });
+        try {
+            logger.info("Handing {} to agent worker {}", job.repoName(), running.pid());
+            AgentWorker.WorkerResult outcome = running.run(job.repoName(), job.repoDir(), job.payload());
+            job.markFinishedByWorker();
+            OutputCapture.store(job.outputFile(), outcome.output(), job.limits());
+            AgentProcess.ProcessResult result = outcome.exitCode() == 0
+                    ? AgentProcess.ProcessResult.success()
+                    : AgentProcess.ProcessResult.failure("Agent worker exited task with code: " + outcome.exitCode());
+            job.result().complete(result.withMetrics(metricsOf(job, outcome)));
+            recycle(running);
+        } catch (IOException e) {
+            if (!job.result().isDone()) {
+                logger.error("Agent worker {} failed while handling {}", running.pid(), job.repoName(), e);
+            }
+            job.result().complete(AgentProcess.ProcessResult.failure("Agent worker failed: " + e.getMessage()));
+            release(replace(running));
+        }
+    }
+
+    // A worker outlives its tasks, so its CPU time and memory cannot be attributed to a single one
+    private static RunMetrics metricsOf(Job job, AgentWorker.WorkerResult outcome) {
+        Instant startedAt = job.result().startedAt();
+        return new RunMetrics(job.repoName(), startedAt, Duration.between(startedAt, Instant.now()).toMillis(),
+                RunMetrics.UNKNOWN, RunMetrics.UNKNOWN, outcome.output().getBytes(StandardCharsets.UTF_8).length,
+                outcome.exitCode(), RunMetrics.Outcome.EXITED);
+    }
+
+    private static Duration idleFor(AgentWorker worker) {
+        return Duration.between(worker.lastUsed(), Instant.now());
+    }
+
+    private void recycle(AgentWorker worker) {
+        if (worker.completedTasks() >= maxTasksPerWorker) {
+            logger.info("Recycling agent worker {} after {} tasks", worker.pid(), worker.completedTasks());
+            release(replace(worker));
+        } else {
+            release(worker);
+        }
+    }
+
+    private AgentWorker replace(AgentWorker worker) {
+        synchronized (this) {
+            all.remove(worker);
+        }
+        worker.close();
+        try {
+            return spawn();
+        } catch (IOException e) {
+            logger.error("Failed to start replacement agent worker", e);
+            return null;
+        }
+    }
+
+    private AgentWorker spawn() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+        }
+        AgentWorker worker = AgentWorker.start(command, workDir);
+        synchronized (this) {
+            all.add(worker);
+        }
+        return worker;
+    }
+
+    private void release(AgentWorker worker) {
+        if (worker == null) {
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                worker.kill();
+                return;
+            }
+            idle.addLast(worker);
+        }
+        assignWork();
+    }
+
+    @Override
+    public void close() {
+        List<AgentWorker> workers;
+        synchronized (this) {
+            closed = true;
+            workers = List.copyOf(all);
+            all.clear();
+            idle.clear();
+            waiting.forEach(job -> job.result().complete(AgentProcess.ProcessResult.failure("Agent worker pool is closed")));
+            waiting.clear();
+        }
+        // All workers share one grace period, so closing the pool takes no longer than closing one worker
+        workers.forEach(AgentWorker::stop);
+        Instant deadline = Instant.now().plus(AgentProcess.TERMINATION_GRACE);
+        workers.forEach(worker -> worker.awaitExit(deadline));
+    }
+
+    /**
+     * A task's result, completed when its worker answers, when it times out, or when the pool closes.
+     * A run that never reached a worker has no start time and no metrics.
+     */
+    static final class Run extends CompletableFuture<AgentProcess.ProcessResult> {
+        private volatile Instant startedAt;
+
+        /**
+         * When a worker took the task, or {@code null} while it is still waiting for one.
+         */
+        Instant startedAt() {return startedAt;}
+    }
+
+    private static final class Job {
+        private final String repoName;
+        private final Path repoDir;
+        private final String payload;
+        private final Path outputFile;
+        private final OutputLimits limits;
+        private final Duration timeout;
+        private final Run result;
+        private volatile boolean finishedByWorker;
+
+        Job(String repoName, Path repoDir, String payload, Path outputFile, OutputLimits limits, Duration timeout, Run result) {
+            this.repoName = repoName;
+            this.repoDir = repoDir;
+            this.payload = payload;
+            this.outputFile = outputFile;
+            this.limits = limits;
+            this.timeout = timeout;
+            this.result = result;
+        }
+
+        String repoName() {return repoName;}
+
+        Path repoDir() {return repoDir;}
+
+        String payload() {return payload;}
+
+        Path outputFile() {return outputFile;}
+
+        OutputLimits limits() {return limits;}
+
+        Run result() {return result;}
+
+        // The timeout runs from here, once a worker has the task, rather than from submission
+        void start() {
+            Instant startedAt = Instant.now();
+            result.startedAt = startedAt;
+            result.completeOnTimeout(AgentProcess.ProcessResult.failure("Agent worker timed out after " + timeout)
+                            .withMetrics(RunMetrics.of(repoName, startedAt, timeout, RunMetrics.Outcome.TIMED_OUT)),
+                    timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        boolean finishedByWorker() {return finishedByWorker;}
+
+        void markFinishedByWorker() {finishedByWorker = true;}
+    }
+}
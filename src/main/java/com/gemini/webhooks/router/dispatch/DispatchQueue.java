@@ -0,0 +1,101 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.gemini.webhooks.router.domain.Priority;
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import com.gemini.webhooks.router.tasks.AgentTask;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Per-repository queues of tasks waiting for an agent slot.
+ * <p>
+ * Higher {@link Priority} always goes first, both within a repository and across repositories.
+ * Within a repository tasks of equal priority are served oldest first, by the timestamp encoded in
+ * the filename. Across repositories whose next tasks share a priority the queue is round-robin: the
+ * repository that has waited longest since its last turn goes next, ties broken by whose task arrived
+ * first, so a noisy repository cannot starve a quiet one. Not thread-safe; the Dispatcher guards
+ * every call with its own lock.
+ */
+class DispatchQueue {
+
+    private static final Comparator<Queued> NEXT_FIRST = Comparator.comparing(Queued::priority)
+            .thenComparing(queued -> timestampOf(queued.task()))
+            .thenComparing(queued -> queued.task().toFilename());
+
+    private final Map<String, RepoQueue> byRepo = new HashMap<>();
+    private final Set<String> queuedFilenames = new HashSet<>();
+    private long turn;
+
+    boolean offer(AgentTask task) {
+        return offer(task, Priority.NORMAL);
+    }
+
+    /**
+     * Adds the task to its repository's queue unless it is already waiting.
+     */
+    boolean offer(AgentTask task, Priority priority) {
+        if (!queuedFilenames.add(task.toFilename())) {
+            return false;
+        }
+        byRepo.computeIfAbsent(task.repoName(), repo -> new RepoQueue()).tasks.add(new Queued(task, priority));
+        return true;
+    }
+
+    /**
+     * Removes and returns the next task, by priority and then in round-robin order,
+     * among the repositories accepted by {@code repoAvailable}.
+     */
+    Optional<AgentTask> pollFor(Predicate<String> repoAvailable) {
+        Optional<Map.Entry<String, RepoQueue>> next = byRepo.entrySet().stream()
+                .filter(entry -> repoAvailable.test(entry.getKey()))
+                .min(Map.Entry.comparingByValue());
+        if (next.isEmpty()) {
+            return Optional.empty();
+        }
+
+        RepoQueue repoQueue = next.get().getValue();
+        AgentTask task = repoQueue.tasks.poll().task();
+        repoQueue.lastTurn = ++turn;
+        if (repoQueue.tasks.isEmpty()) {
+            byRepo.remove(next.get().getKey());
+        }
+        queuedFilenames.remove(task.toFilename());
+        return Optional.of(task);
+    }
+
+    int size() {
+        return queuedFilenames.size();
+    }
+
+    private static Instant timestampOf(AgentTask task) {
+        return task instanceof WebhookFilename webhook ? webhook.timestamp() : Instant.MIN;
+    }
+
+    private record Queued(AgentTask task, Priority priority) {
+    }
+
+    private static final class RepoQueue implements Comparable<RepoQueue> {
+        private final PriorityQueue<Queued> tasks = new PriorityQueue<>(NEXT_FIRST);
+        private long lastTurn;
+
+        @Override
+        public int compareTo(RepoQueue other) {
+            Queued head = tasks.peek();
+            Queued otherHead = other.tasks.peek();
+            int byPriority = head.priority().compareTo(otherHead.priority());
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            int byTurn = Long.compare(lastTurn, other.lastTurn);
+            return byTurn != 0 ? byTurn : NEXT_FIRST.compare(head, otherHead);
+        }
+    }
+}
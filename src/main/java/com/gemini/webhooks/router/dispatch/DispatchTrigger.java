@@ -0,0 +1,39 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces dispatch requests from several sources (periodic sweep, pending/ watcher, ...) so that
+ * at most one dispatch cycle is queued on the executor at any time.
+ */
+public class DispatchTrigger {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchTrigger.class);
+
+    private final Runnable dispatch;
+    private final Executor executor;
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+
+    public DispatchTrigger(Runnable dispatch, Executor executor) {
+        this.dispatch = dispatch;
+        this.executor = executor;
+    }
+
+    public void request() {
+        if (!queued.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            queued.set(false);
+            try {
+                dispatch.run();
+            } catch (Exception e) {
+                logger.error("Dispatcher error", e);
+            }
+        });
+    }
+}
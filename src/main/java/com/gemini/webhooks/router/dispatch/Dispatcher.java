@@ -9,92 +9,170 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 public class Dispatcher {
 
+    public static final int DEFAULT_MAX_CONCURRENT_AGENTS = 4;
+
     private static final Logger logger = LoggerFactory.getLogger(Dispatcher.class);
 
     private final Path outputsDir;
     private final AgentTasks tasks;
     private final AgentProcess agentProcess;
     private final ActiveRepos activeRepos = new ActiveRepos();
+    private final DispatchQueue queue = new DispatchQueue();
+    private final Semaphore agentSlots;
     private final Executor executor;
+    private final AdaptiveTimeouts timeouts;
+    private volatile boolean shuttingDown;
 
-    public Dispatcher(FileBasedTasksConfig config, AgentTasks tasks) {
-        this(config.outputsDir(), tasks, AgentProcess.create(config.repoBaseDir()), Executors.newVirtualThreadPerTaskExecutor());
+    public Dispatcher(FileBasedTasksConfig config, AgentTasks tasks, int maxConcurrentAgents) {
+        this(config.outputsDir(), tasks, AgentProcess.create(config.repoBaseDir()),
+                Executors.newVirtualThreadPerTaskExecutor(), maxConcurrentAgents);
     }
 
     public Dispatcher(Path outputsDir, AgentTasks tasks, AgentProcess agentProcess, Executor executor) {
+        this(outputsDir, tasks, agentProcess, executor, DEFAULT_MAX_CONCURRENT_AGENTS);
+    }
+
+    public Dispatcher(Path outputsDir, AgentTasks tasks, AgentProcess agentProcess, Executor executor, int maxConcurrentAgents) {
+        this(outputsDir, tasks, agentProcess, executor, maxConcurrentAgents, AdaptiveTimeouts.disabled());
+    }
+
+    /**
+     * @param timeouts per-repository agent timeouts; repositories without one use the AgentProcess default
+     */
+    public Dispatcher(Path outputsDir, AgentTasks tasks, AgentProcess agentProcess, Executor executor, int maxConcurrentAgents,
+                      AdaptiveTimeouts timeouts) {
+        if (maxConcurrentAgents < 1) {
+            throw new IllegalArgumentException("maxConcurrentAgents must be at least 1, got " + maxConcurrentAgents);
+        }
         this.outputsDir = outputsDir;
         this.tasks = tasks;
         this.agentProcess = agentProcess;
         this.executor = executor;
+        this.timeouts = timeouts;
+        this.agentSlots = new Semaphore(maxConcurrentAgents);
     }
 
-    public void dispatch() {
-        tasks.clearInvalid();
-        tasks.skipUnsupported();
+    public synchronized void dispatch() {
         tasks.recoverStuck(activeRepos);
 
-         tasks.listPending().stream()
-                .filter(this::notForActiveRepositories)
-                .forEach(this::processTask);
+        for (AgentTask task : tasks.sweepPending()) {
+            queue.offer(task, tasks.priorityOf(task));
+        }
+        startWaitingTasks();
+    }
+
+    /**
+     * Starts queued tasks while agent slots are free, at most one per repository.
+     * Called after every sweep and again whenever a running task releases its slot.
+     */
+    private synchronized void startWaitingTasks() {
+        while (!shuttingDown && agentSlots.tryAcquire()) {
+            Optional<AgentTask> next = queue.pollFor(repo -> !activeRepos.isTaken(repo));
+            if (next.isEmpty()) {
+                agentSlots.release();
+                if (queue.size() > 0) {
+                    logger.debug("{} task(s) waiting for their repositories to become free", queue.size());
+                }
+                return;
+            }
+            if (!processTask(next.get())) {
+                agentSlots.release();
+            }
+        }
+        if (queue.size() > 0) {
+            logger.debug("All agent slots busy, {} task(s) queued", queue.size());
+        }
     }
 
-    private void processWebhook(AgentTask task) {
+    /**
+     * Prepares the task and launches its agent. The returned future completes once the task has been
+     * moved to completed/ or failed/; it does not hold a thread while the agent runs.
+     */
+    private CompletableFuture<Void> processWebhook(AgentTask task) {
         try {
             Optional<ProcessableWebhook> webhookOpt = tasks.prepareForProcessing(task, outputsDir);
             if (webhookOpt.isEmpty()) {
                 tasks.failTask(task);
-                return;
+                return CompletableFuture.completedFuture(null);
             }
 
             ProcessableWebhook webhook = webhookOpt.get();
             Path outputFile = webhook.outputFile();
             logger.info("Agent output for {} will be written to: {}", webhook.repoName(), outputFile);
 
-            AgentProcess.ProcessResult result = agentProcess.execute(webhook.repoName(), webhook.webhookContent(), outputFile);
-
-            if (result.isSuccess()) {
-                tasks.completeTask(task);
-            } else {
-                logger.error("Agent process failed for {}: {}", webhook.repoName(), result.errorMessage());
-                tasks.failTask(task);
-            }
+            return launch(webhook, outputFile)
+                    .handle((result, error) -> {
+                        finishTask(task, webhook, result, error);
+                        return null;
+                    });
         } catch (Exception e) {
             logger.error("Unexpected error processing webhook: {}", task.toFilename(), e);
             tasks.failTask(task);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
-    private boolean notForActiveRepositories(AgentTask task) {
-        final boolean repoIsTaken = activeRepos.isTaken(task.repoName());
-        if (repoIsTaken) {
-            logger.debug("The repo {} already has active task, skipping {}", task.repoName(), task.toFilename());
+    private CompletableFuture<AgentProcess.ProcessResult> launch(ProcessableWebhook webhook, Path outputFile) {
+        Optional<Duration> timeout = timeouts.timeoutFor(webhook.repoName());
+        if (timeout.isEmpty()) {
+            return agentProcess.executeAsync(webhook.repoName(), webhook.webhookContent(), outputFile);
         }
-        return !repoIsTaken;
+        logger.info("Using adaptive timeout of {} for {}", timeout.get(), webhook.repoName());
+        return agentProcess.executeAsync(webhook.repoName(), webhook.webhookContent(), outputFile, timeout.get());
     }
 
-    private void processTask(AgentTask task) {
+    private void finishTask(AgentTask task, ProcessableWebhook webhook, AgentProcess.ProcessResult result, Throwable error) {
+        if (error instanceof CancellationException) {
+            // Left in processing/ so that recovery puts it back in pending/ on the next start
+            logger.warn("Agent run for {} was cancelled, leaving {} in processing", webhook.repoName(), task.toFilename());
+        } else if (error != null) {
+            logger.error("Unexpected error processing webhook: {}", task.toFilename(), error);
+            tasks.failTask(task);
+        } else if (result.isSuccess()) {
+            tasks.completeTask(task);
+        } else {
+            logger.error("Agent process failed for {}: {}", webhook.repoName(), result.errorMessage());
+            tasks.failTask(task);
+        }
+    }
+
+    /**
+     * Stops starting queued tasks, waits up to {@code drainTimeout} for running agents and
+     * terminates whatever is still running after that.
+     */
+    public void shutdown(Duration drainTimeout) {
+        shuttingDown = true;
+        agentProcess.shutdown(drainTimeout);
+    }
+
+    private boolean processTask(AgentTask task) {
         if (!activeRepos.takeFor(task)) {
-            return;
+            return false;
         }
 
         logger.info("Dispatching webhook file: {} for repo: {}", task.toFilename(), task.repoName());
 
         if (!tasks.startProcessing(task)) {
-            return;
+            activeRepos.releaseFor(task);
+            return false;
         }
 
-        executor.execute(() -> {
-            try {
-                processWebhook(task);
-            } finally {
-                activeRepos.releaseFor(task);
-            }
-        });
+        // Runs on whichever thread observes the agent's exit; starting the next task only hands it to the executor
+        executor.execute(() -> processWebhook(task).whenComplete((ignored, error) -> {
+            activeRepos.releaseFor(task);
+            agentSlots.release();
+            startWaitingTasks();
+        }));
+        return true;
     }
-}
\ No newline at end of file
+}
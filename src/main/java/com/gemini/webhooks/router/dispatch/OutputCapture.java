@@ -0,0 +1,158 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Copies an agent's combined stdout and stderr into its output file, up to a byte cap.
+ * <p>
+ * Once the cap is reached a truncation marker is written and further output is read and dropped, so the
+ * agent never blocks on a full pipe. The same happens once writing the file fails, e.g. when the disk is
+ * full or the file has been removed. The most recent output is kept in memory for {@link #tail()} regardless
+ * of the cap.
+ */
+final class OutputCapture {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputCapture.class);
+    static final int TAIL_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final long maxBytes;
+    private final OutputStream out;
+    private final byte[] ring = new byte[TAIL_BYTES];
+    private long totalBytes;
+    private boolean closed;
+    private IOException failure;
+
+    private OutputCapture(Path file, long maxBytes, OutputStream out) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.out = out;
+    }
+
+    static OutputCapture open(Path file, long maxBytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        // Unbuffered: each chunk read from the pipe lands in the file straight away, as with a plain redirect
+        return new OutputCapture(file, maxBytes, Files.newOutputStream(file));
+    }
+
+    /**
+     * Stores output that arrives in one piece under the same limits, compressing it if configured.
+     */
+    static void store(Path file, String content, OutputLimits limits) throws IOException {
+        OutputCapture capture = open(file, limits.maxBytes());
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        capture.write(bytes, bytes.length);
+        capture.close();
+        if (capture.failure != null) {
+            throw capture.failure;
+        }
+        if (limits.compress()) {
+            compress(file);
+        }
+    }
+
+    /**
+     * Copies {@code in} until end of stream, then closes the file. Only a failure to read ends it early.
+     */
+    void drain(InputStream in) {
+        byte[] buffer = new byte[8192];
+        try (in) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                write(buffer, read);
+            }
+        } catch (IOException e) {
+            logger.debug("Agent output stream for {} ended: {}", file, e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    synchronized void write(byte[] bytes, int length) {
+        remember(bytes, length);
+        long before = totalBytes;
+        totalBytes += length;
+        if (closed || failure != null || before >= maxBytes) {
+            return;
+        }
+        int kept = (int) Math.min(length, maxBytes - before);
+        try {
+            out.write(bytes, 0, kept);
+            if (totalBytes > maxBytes) {
+                out.write("%n[output truncated: limit of %d bytes reached]%n".formatted(maxBytes).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            failure = e;
+            logger.error("Failed to write agent output to {}, dropping the rest of it", file, e);
+        }
+    }
+
+    /**
+     * Whether writing the output file failed; output after the failure was read and dropped.
+     */
+    synchronized boolean failed() {
+        return failure != null;
+    }
+
+    /**
+     * The most recent output, up to {@value #TAIL_BYTES} bytes, including anything dropped by the cap.
+     */
+    synchronized String tail() {
+        int length = (int) Math.min(totalBytes, TAIL_BYTES);
+        int start = (int) ((totalBytes - length) % TAIL_BYTES);
+        byte[] recent = new byte[length];
+        int firstPart = Math.min(length, TAIL_BYTES - start);
+        System.arraycopy(ring, start, recent, 0, firstPart);
+        System.arraycopy(ring, 0, recent, firstPart, length - firstPart);
+        return new String(recent, StandardCharsets.UTF_8);
+    }
+
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (failure == null && totalBytes > maxBytes) {
+                out.write("[%d bytes of output dropped]%n".formatted(totalBytes - maxBytes).getBytes(StandardCharsets.UTF_8));
+            }
+            out.close();
+        } catch (IOException e) {
+            logger.error("Failed to close agent output file: {}", file, e);
+        }
+    }
+
+    private void remember(byte[] bytes, int length) {
+        int offset = Math.max(0, length - TAIL_BYTES);
+        int position = (int) ((totalBytes + offset) % TAIL_BYTES);
+        for (int i = offset; i < length; i++) {
+            ring[position] = bytes[i];
+            position = (position + 1) % TAIL_BYTES;
+        }
+    }
+
+    /**
+     * Replaces {@code file} with {@code file.gz}, returning the compressed file.
+     */
+    static Path compress(Path file) throws IOException {
+        Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+        try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            Files.copy(file, gzip);
+        }
+        Files.delete(file);
+        return compressed;
+    }
+}
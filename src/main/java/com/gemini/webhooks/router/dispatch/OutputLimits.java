@@ -0,0 +1,18 @@
+package com.gemini.webhooks.router.dispatch;
+
+/**
+ * How much of an agent's output is kept and how it is stored once the run ends.
+ *
+ * @param maxBytes bytes written to the output file before the rest is dropped behind a truncation marker
+ * @param compress whether finished output files are replaced by a gzip-compressed {@code .gz} copy
+ */
+public record OutputLimits(long maxBytes, boolean compress) {
+
+    public static final OutputLimits DEFAULT = new OutputLimits(10L * 1024 * 1024, false);
+
+    public OutputLimits {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1, got " + maxBytes);
+        }
+    }
+}
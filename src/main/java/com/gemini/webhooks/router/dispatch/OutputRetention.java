@@ -0,0 +1,115 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Deletes agent output files from outputs/ once they are older than a maximum age, and then the oldest
+ * remaining ones while the directory exceeds a total size. Files an agent is still writing are never deleted.
+ */
+public class OutputRetention {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputRetention.class);
+
+    private final Path outputsDir;
+    private final Duration maxAge;
+    private final long maxTotalBytes;
+    private final Predicate<Path> inUse;
+
+    /**
+     * @param maxAge        {@link Duration#ZERO} keeps files regardless of age
+     * @param maxTotalBytes 0 places no limit on the total size
+     * @param inUse         files for which this returns true are kept, e.g. {@link AgentProcess#isWriting}
+     */
+    public OutputRetention(Path outputsDir, Duration maxAge, long maxTotalBytes, Predicate<Path> inUse) {
+        this.outputsDir = outputsDir;
+        this.maxAge = maxAge;
+        this.maxTotalBytes = maxTotalBytes;
+        this.inUse = inUse;
+    }
+
+    public boolean isEnabled() {
+        return maxAge.isPositive() || maxTotalBytes > 0;
+    }
+
+    public int sweep() {
+        return sweep(Instant.now());
+    }
+
+    /**
+     * @return the number of files deleted
+     */
+    public int sweep(Instant now) {
+        if (!isEnabled() || Files.notExists(outputsDir)) {
+            return 0;
+        }
+        List<OutputFile> files;
+        try {
+            files = listOldestFirst();
+        } catch (IOException e) {
+            logger.error("Failed to list outputs directory for retention: {}", outputsDir, e);
+            return 0;
+        }
+
+        int deleted = 0;
+        long totalBytes = files.stream().mapToLong(OutputFile::size).sum();
+        for (OutputFile file : files) {
+            boolean expired = maxAge.isPositive() && file.modified().isBefore(now.minus(maxAge));
+            boolean overLimit = maxTotalBytes > 0 && totalBytes > maxTotalBytes;
+            if (!expired && !overLimit) {
+                // Oldest first: every later file is newer and the total is within the limit
+                break;
+            }
+            if (inUse.test(file.path()) || !delete(file.path())) {
+                continue;
+            }
+            totalBytes -= file.size();
+            deleted++;
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} agent output file(s), {} bytes remain in {}", deleted, totalBytes, outputsDir);
+        }
+        return deleted;
+    }
+
+    private List<OutputFile> listOldestFirst() throws IOException {
+        List<OutputFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(outputsDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    files.add(new OutputFile(path, attributes.lastModifiedTime().toInstant(), attributes.size()));
+                } catch (NoSuchFileException e) {
+                    // Removed or compressed since the walk listed it
+                }
+            }
+        }
+        files.sort(Comparator.comparing(OutputFile::modified).thenComparing(OutputFile::path));
+        return files;
+    }
+
+    private static boolean delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to delete agent output: {}", path, e);
+            return false;
+        }
+    }
+
+    private record OutputFile(Path path, Instant modified, long size) {}
+}
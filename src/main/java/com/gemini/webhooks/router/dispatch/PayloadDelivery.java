@@ -0,0 +1,19 @@
+package com.gemini.webhooks.router.dispatch;
+
+/**
+ * How a one-shot agent process receives the webhook payload.
+ */
+public enum PayloadDelivery {
+    /**
+     * As the last command-line argument. Payloads too large for a single argument are streamed over stdin instead.
+     */
+    ARGUMENT,
+    /**
+     * Streamed to the agent's stdin, which is then closed.
+     */
+    STDIN,
+    /**
+     * Written to a temporary file next to the output file, passed as {@code @<path>} and deleted after the run.
+     */
+    FILE
+}
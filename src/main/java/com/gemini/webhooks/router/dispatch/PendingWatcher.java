@@ -0,0 +1,118 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches the pending directory and fires a callback shortly after files appear in it, with their names.
+ * Events arriving within the debounce window are folded into a single callback, which a steady stream of
+ * events delays by no more than {@link #MAX_DELAY_MILLIS} after the first of them. If the watch service lost
+ * events, the callback receives every file in the directory instead.
+ */
+public class PendingWatcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingWatcher.class);
+    private static final long DEBOUNCE_MILLIS = 100;
+    static final long MAX_DELAY_MILLIS = 1000;
+
+    private final Path directory;
+    private final Consumer<Set<String>> onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public static PendingWatcher start(Path directory, Runnable onChange) throws IOException {
+        return start(directory, filenames -> onChange.run());
+    }
+
+    public static PendingWatcher start(Path directory, Consumer<Set<String>> onChange) throws IOException {
+        WatchService watchService = directory.getFileSystem().newWatchService();
+        // Files moved into the directory are reported as ENTRY_CREATE as well
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        PendingWatcher watcher = new PendingWatcher(directory, onChange, watchService);
+        watcher.thread.start();
+        logger.info("Watching {} for new webhooks", directory);
+        return watcher;
+    }
+
+    private PendingWatcher(Path directory, Consumer<Set<String>> onChange, WatchService watchService) {
+        this.directory = directory;
+        this.onChange = onChange;
+        this.watchService = watchService;
+        this.thread = Thread.ofPlatform().daemon().name("pending-watcher").unstarted(this::run);
+    }
+
+    private void run() {
+        try {
+            boolean watching = true;
+            while (watching) {
+                Set<String> created = new LinkedHashSet<>();
+                watching = drain(watchService.take(), created);
+                long notifyBy = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+                long remaining;
+                WatchKey next;
+                while (watching && (remaining = notifyBy - System.nanoTime()) > 0
+                        && (next = watchService.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS), remaining),
+                        TimeUnit.NANOSECONDS)) != null) {
+                    watching = drain(next, created);
+                }
+                notifyChange(created);
+            }
+            logger.warn("Stopped watching {}: directory is no longer accessible", directory);
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Pending watcher for {} stopped", directory);
+        }
+    }
+
+    private boolean drain(WatchKey key, Set<String> created) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                created.addAll(listDirectory());
+            } else if (event.context() instanceof Path filename) {
+                created.add(filename.toString());
+            }
+        }
+        return key.reset();
+    }
+
+    private Set<String> listDirectory() {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).collect(Collectors.toSet());
+        } catch (IOException e) {
+            logger.warn("Failed to list {} after lost watch events", directory, e);
+            return Set.of();
+        }
+    }
+
+    private void notifyChange(Set<String> created) {
+        try {
+            onChange.accept(Set.copyOf(created));
+        } catch (Exception e) {
+            logger.error("Pending watcher callback failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close watch service for {}", directory, e);
+        }
+        thread.interrupt();
+    }
+}
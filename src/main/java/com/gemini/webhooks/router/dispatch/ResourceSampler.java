@@ -0,0 +1,84 @@
+package com.gemini.webhooks.router.dispatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Samples the CPU time and peak memory of an agent process and its descendants while they run.
+ * <p>
+ * Neither is available once a process has been reaped, so the values are those of the last sample:
+ * CPU time used after it is not counted. Peak memory comes from each process's own high-water mark
+ * ({@code VmHWM} in {@code /proc/<pid>/status}), which is only available on Linux.
+ */
+final class ResourceSampler {
+
+    static final Duration SAMPLE_INTERVAL = Duration.ofSeconds(1);
+
+    private final Process process;
+    // Latest reading per process, so that descendants which exit keep counting
+    private final Map<Long, Long> cpuMillisByPid = new ConcurrentHashMap<>();
+    private final Map<Long, Long> peakRssBytesByPid = new ConcurrentHashMap<>();
+
+    private ResourceSampler(Process process) {
+        this.process = process;
+    }
+
+    static ResourceSampler start(Process process) {
+        ResourceSampler sampler = new ResourceSampler(process);
+        sampler.sample();
+        Thread.ofVirtual().start(sampler::sampleUntilExit);
+        return sampler;
+    }
+
+    long cpuMillis() {
+        return cpuMillisByPid.isEmpty()
+                ? RunMetrics.UNKNOWN
+                : cpuMillisByPid.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    long peakRssBytes() {
+        return peakRssBytesByPid.isEmpty()
+                ? RunMetrics.UNKNOWN
+                : peakRssBytesByPid.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private void sampleUntilExit() {
+        try {
+            while (!process.waitFor(SAMPLE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS)) {
+                sample();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sample() {
+        Stream.concat(Stream.of(process.toHandle()), process.descendants()).forEach(handle -> {
+            long pid = handle.pid();
+            handle.info().totalCpuDuration().ifPresent(cpu -> cpuMillisByPid.put(pid, cpu.toMillis()));
+            long peak = peakRssBytesOf(pid);
+            if (peak != RunMetrics.UNKNOWN) {
+                peakRssBytesByPid.merge(pid, peak, Math::max);
+            }
+        });
+    }
+
+    private static long peakRssBytesOf(long pid) {
+        try (Stream<String> lines = Files.lines(Path.of("/proc", Long.toString(pid), "status"))) {
+            return lines.filter(line -> line.startsWith("VmHWM:"))
+                    .findFirst()
+                    .map(line -> Long.parseLong(line.replaceAll("\\D", "")) * 1024)
+                    .orElse((long) RunMetrics.UNKNOWN);
+        } catch (IOException | UncheckedIOException | NumberFormatException e) {
+            // Not Linux, or the process exited between listing and reading
+            return RunMetrics.UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.gemini.webhooks.router.dispatch;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Resources used by one agent run. Values that could not be measured are {@link #UNKNOWN}.
+ *
+ * @param wallMillis   time from launch until the agent exited, timed out or was cancelled
+ * @param cpuMillis    user plus system CPU time of the agent and its child processes, sampled while they run
+ * @param peakRssBytes sum of the peak resident set size of the agent and each of its child processes
+ * @param outputBytes  bytes the agent wrote to stdout and stderr, including any dropped by the output limit
+ */
+public record RunMetrics(String repoName, Instant startedAt, long wallMillis, long cpuMillis, long peakRssBytes,
+                         long outputBytes, int exitCode, Outcome outcome) {
+
+    public static final int UNKNOWN = -1;
+
+    public enum Outcome {
+        EXITED, TIMED_OUT, CANCELLED
+    }
+
+    /**
+     * Metrics for a run of which only the duration is known.
+     */
+    static RunMetrics of(String repoName, Instant startedAt, Duration wallTime, Outcome outcome) {
+        return new RunMetrics(repoName, startedAt, wallTime.toMillis(), UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN, outcome);
+    }
+
+    public boolean isFailure() {
+        return outcome != Outcome.EXITED || exitCode != 0;
+    }
+}
@@ -0,0 +1,156 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Appends every agent run to {@code <statsDir>/<repo>.jsonl}, one JSON object per line, and reads them back
+ * into {@link AgentMetrics} when the daemon starts. Only the latest {@link #RETAINED_RUNS} runs of a repository
+ * are kept: once a file holds twice as many, it is rewritten with just those.
+ */
+public class RunStatsFiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunStatsFiles.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // Enough to hold AgentMetrics' recent successful runs even when most runs fail
+    static final int RETAINED_RUNS = 5 * AgentMetrics.RECENT_RUNS;
+
+    private final Path statsDir;
+    // Guarded by this; lines in each repository's file, counted on its first append
+    private final Map<String, Long> lineCounts = new HashMap<>();
+
+    public RunStatsFiles(Path statsDir) {
+        this.statsDir = statsDir;
+    }
+
+    public Path fileFor(String repoName) {
+        return statsDir.resolve(repoName + ".jsonl");
+    }
+
+    /**
+     * Adds the latest {@link #RETAINED_RUNS} runs of every repository in the stats directory to {@code metrics}.
+     * Lines that cannot be parsed, such as one cut short by a crash, are skipped.
+     *
+     * @return the number of runs restored
+     */
+    public int restoreInto(AgentMetrics metrics) {
+        if (Files.notExists(statsDir)) {
+            return 0;
+        }
+        int restored = 0;
+        try (Stream<Path> files = Files.list(statsDir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".jsonl")).sorted().toList()) {
+                String filename = file.getFileName().toString();
+                String repoName = filename.substring(0, filename.length() - ".jsonl".length());
+                for (String line : tail(file)) {
+                    Optional<RunMetrics> run = parse(repoName, line);
+                    if (run.isPresent()) {
+                        metrics.restore(run.get());
+                        restored++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read run stats from {}", statsDir, e);
+        }
+        return restored;
+    }
+
+    private static Deque<String> tail(Path file) throws IOException {
+        Deque<String> lines = new ArrayDeque<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (lines.size() == RETAINED_RUNS) {
+                    lines.removeFirst();
+                }
+                lines.addLast(line);
+            }
+        }
+        return lines;
+    }
+
+    private static Optional<RunMetrics> parse(String repoName, String line) {
+        if (line.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            JsonNode node = MAPPER.readTree(line);
+            return Optional.of(new RunMetrics(repoName,
+                    Instant.parse(node.required("startedAt").asText()),
+                    node.required("wallMillis").asLong(),
+                    node.path("cpuMillis").asLong(RunMetrics.UNKNOWN),
+                    node.path("peakRssBytes").asLong(RunMetrics.UNKNOWN),
+                    node.path("outputBytes").asLong(RunMetrics.UNKNOWN),
+                    node.path("exitCode").asInt(RunMetrics.UNKNOWN),
+                    RunMetrics.Outcome.valueOf(node.required("outcome").asText())));
+        } catch (IOException | IllegalArgumentException | DateTimeParseException e) {
+            logger.warn("Skipping unreadable run stats line for {}: {}", repoName, line);
+            return Optional.empty();
+        }
+    }
+
+    public synchronized void append(RunMetrics run) {
+        ObjectNode line = MAPPER.createObjectNode()
+                .put("startedAt", run.startedAt().toString())
+                .put("outcome", run.outcome().name())
+                .put("exitCode", run.exitCode())
+                .put("wallMillis", run.wallMillis())
+                .put("cpuMillis", run.cpuMillis())
+                .put("peakRssBytes", run.peakRssBytes())
+                .put("outputBytes", run.outputBytes());
+        Path file = fileFor(run.repoName());
+        try {
+            Files.createDirectories(statsDir);
+            long lines = lineCounts.containsKey(run.repoName()) ? lineCounts.get(run.repoName()) : countLines(file);
+            Files.writeString(file, MAPPER.writeValueAsString(line) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            lines++;
+            // Trimming only at twice the retained size rewrites each file once every RETAINED_RUNS runs
+            if (lines > 2L * RETAINED_RUNS) {
+                trim(file);
+                lines = RETAINED_RUNS;
+            }
+            lineCounts.put(run.repoName(), lines);
+        } catch (IOException e) {
+            lineCounts.remove(run.repoName());
+            logger.error("Failed to append run stats for {}", run.repoName(), e);
+        }
+    }
+
+    private static long countLines(Path file) throws IOException {
+        if (Files.notExists(file)) {
+            return 0;
+        }
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.count();
+        }
+    }
+
+    // Replaces the file with its latest runs; a crash leaves either the old file or the trimmed one
+    private static void trim(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, List.copyOf(tail(file)), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,79 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Framing used between the router and a long-lived agent worker on the worker's stdin and stdout.
+ * <p>
+ * Every message is a frame: a 4-byte big-endian length followed by that many bytes of UTF-8 JSON.
+ * The router sends {@code {"type":"task","id":n,"repo":...,"directory":...,"payload":...}} and expects
+ * {@code {"type":"result","id":n,"exitCode":...,"output":...}}, or {@code {"type":"ping","id":n}} and
+ * expects {@code {"type":"pong","id":n}}. One message is in flight per worker at a time.
+ */
+final class WorkerProtocol {
+
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private WorkerProtocol() {
+    }
+
+    static ObjectNode task(long id, String repoName, Path directory, String payload) {
+        return MAPPER.createObjectNode()
+                .put("type", "task")
+                .put("id", id)
+                .put("repo", repoName)
+                .put("directory", directory.toString())
+                .put("payload", payload);
+    }
+
+    static ObjectNode ping(long id) {
+        return MAPPER.createObjectNode()
+                .put("type", "ping")
+                .put("id", id);
+    }
+
+    static void write(DataOutputStream out, ObjectNode message) throws IOException {
+        byte[] frame = MAPPER.writeValueAsBytes(message);
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    /**
+     * Reads the next frame, throwing {@link java.io.EOFException} when the worker has closed its stdout.
+     */
+    static ObjectNode read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid worker frame length: " + length);
+        }
+        byte[] frame = in.readNBytes(length);
+        if (frame.length != length) {
+            throw new IOException("Worker closed its output mid-frame");
+        }
+        if (!(MAPPER.readTree(frame) instanceof ObjectNode message)) {
+            throw new IOException("Worker frame is not a JSON object");
+        }
+        return message;
+    }
+
+    /**
+     * Reads frames until the reply to {@code id} of the expected type arrives.
+     */
+    static ObjectNode awaitReply(DataInputStream in, long id, String type) throws IOException {
+        while (true) {
+            ObjectNode message = read(in);
+            if (message.path("id").asLong(-1) == id && type.equals(message.path("type").asText())) {
+                return message;
+            }
+        }
+    }
+}
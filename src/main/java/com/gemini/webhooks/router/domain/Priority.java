@@ -0,0 +1,10 @@
+package com.gemini.webhooks.router.domain;
+
+/**
+ * Scheduling priority of a dispatchable webhook, most important first.
+ */
+public enum Priority {
+    URGENT,
+    HIGH,
+    NORMAL
+}
@@ -0,0 +1,44 @@
+package com.gemini.webhooks.router.domain;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Derives a webhook's {@link Priority} from its payload.
+ * <p>
+ * A dispatchable webhook carrying one of the urgent labels in one of the key repositories is
+ * {@link Priority#URGENT}; either condition alone makes it {@link Priority#HIGH}. Everything else,
+ * including events that are never dispatched, is {@link Priority#NORMAL}. Repositories are matched
+ * by {@code owner/name}, labels case-insensitively.
+ */
+public final class PriorityPolicy {
+
+    public static final PriorityPolicy NONE = new PriorityPolicy(Set.of(), Set.of());
+
+    private final Set<String> keyRepos;
+    private final Set<String> urgentLabels;
+
+    public PriorityPolicy(Set<String> keyRepos, Set<String> urgentLabels) {
+        this.keyRepos = Set.copyOf(keyRepos);
+        this.urgentLabels = urgentLabels.stream()
+                .map(label -> label.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public Priority priorityOf(WebhookPayload payload) {
+        if (!payload.isDispatchable()) {
+            return Priority.NORMAL;
+        }
+        boolean keyRepo = payload.repoFullName().map(keyRepos::contains).orElse(false);
+        boolean urgent = payload.labels().stream()
+                .anyMatch(label -> urgentLabels.contains(label.toLowerCase(Locale.ROOT)));
+        if (keyRepo && urgent) {
+            return Priority.URGENT;
+        }
+        if (keyRepo || urgent) {
+            return Priority.HIGH;
+        }
+        return Priority.NORMAL;
+    }
+}
@@ -15,12 +15,20 @@ public class ProcessableWebhook {
             .withZone(ZoneOffset.UTC);
 
     private final AgentTask task;
-    private final WebhookPayload payload;
+    private final String content;
     private final Path outputFile;
 
     public ProcessableWebhook(AgentTask task, WebhookPayload payload, Path outputDir) {
+        this(task, payload, payload.rawJson(), outputDir);
+    }
+
+    /**
+     * A webhook whose agent run receives {@code content} instead of the payload's own JSON,
+     * e.g. several coalesced payloads for the same issue.
+     */
+    public ProcessableWebhook(AgentTask task, WebhookPayload payload, String content, Path outputDir) {
         this.task = task;
-        this.payload = payload;
+        this.content = content;
         this.outputFile = outputDir.resolve(outputFilename(task.repoName(), payload.issueNumber(), Instant.now()));
     }
 
@@ -29,7 +37,7 @@ public class ProcessableWebhook {
     }
 
     public String webhookContent() {
-        return payload.rawJson();
+        return content;
     }
 
     public Path outputFile() {
@@ -0,0 +1,171 @@
+package com.gemini.webhooks.router.domain;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The handful of payload fields needed for routing, pulled out with a token-streaming parser.
+ * Subtrees such as {@code commits}, {@code sender} or the issue {@code body} are skipped without
+ * being materialised, and parsing stops as soon as every routing field is known. The remainder of
+ * the document is therefore not validated; the agent always receives the raw JSON.
+ */
+record RoutingFields(Optional<Integer> issueNumber, String eventType, Optional<String> repoFullName, List<String> labels) {
+
+    static final RoutingFields UNPARSEABLE = new RoutingFields(Optional.empty(), "unknown", Optional.empty(), List.of());
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static RoutingFields extract(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return UNPARSEABLE;
+            }
+            return new Scan().read(parser);
+        }
+    }
+
+    private static final class Scan {
+        private String action;
+        private boolean hasIssue;
+        private Integer issueNumber;
+        private boolean hasPullRequest;
+        private Integer pullRequestNumber;
+        private boolean hasRef;
+        private boolean hasCommits;
+        private boolean hasRepository;
+        private String repoFullName;
+        private final List<String> issueLabels = new ArrayList<>();
+        private final List<String> pullRequestLabels = new ArrayList<>();
+
+        RoutingFields read(JsonParser parser) throws IOException {
+            while (!complete() && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "action" -> action = scalarText(parser, value);
+                    case "issue" -> {
+                        hasIssue = true;
+                        issueNumber = numberAndLabels(parser, value, issueLabels);
+                    }
+                    case "pull_request" -> {
+                        hasPullRequest = true;
+                        pullRequestNumber = numberAndLabels(parser, value, pullRequestLabels);
+                    }
+                    case "ref" -> {
+                        hasRef = true;
+                        parser.skipChildren();
+                    }
+                    case "commits" -> {
+                        hasCommits = true;
+                        parser.skipChildren();
+                    }
+                    case "repository" -> {
+                        hasRepository = true;
+                        repoFullName = fullNameField(parser, value);
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            return new RoutingFields(issueNumber(), eventType(), Optional.ofNullable(repoFullName), labels());
+        }
+
+        // An issue payload with a number fixes every field; nothing later in the document can change them
+        private boolean complete() {
+            return action != null && hasRepository && hasIssue && issueNumber != null;
+        }
+
+        private Optional<Integer> issueNumber() {
+            if (issueNumber != null) {
+                return Optional.of(issueNumber);
+            }
+            return Optional.ofNullable(pullRequestNumber);
+        }
+
+        private List<String> labels() {
+            return List.copyOf(hasIssue ? issueLabels : pullRequestLabels);
+        }
+
+        private String eventType() {
+            if (hasIssue && action != null) {
+                return "issues." + action;
+            }
+            if (hasPullRequest && action != null) {
+                return "pull_request." + action;
+            }
+            if (hasRef && hasCommits) {
+                return "push";
+            }
+            return "unknown";
+        }
+
+        private static Integer numberAndLabels(JsonParser parser, JsonToken value, List<String> labels) throws IOException {
+            Integer number = null;
+            if (value != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                if ("number".equals(name)) {
+                    number = fieldValue.isScalarValue() ? parser.getValueAsInt() : 0;
+                } else if ("labels".equals(name) && fieldValue == JsonToken.START_ARRAY) {
+                    readLabelNames(parser, labels);
+                    continue;
+                }
+                parser.skipChildren();
+            }
+            return number;
+        }
+
+        private static void readLabelNames(JsonParser parser, List<String> labels) throws IOException {
+            JsonToken element;
+            while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (element != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken fieldValue = parser.nextToken();
+                    if ("name".equals(name) && fieldValue == JsonToken.VALUE_STRING) {
+                        labels.add(parser.getText());
+                    }
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        private static String fullNameField(JsonParser parser, JsonToken value) throws IOException {
+            String fullName = null;
+            if (value != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                if ("full_name".equals(name)) {
+                    fullName = fieldValue == JsonToken.VALUE_NULL ? null : scalarText(parser, fieldValue);
+                }
+                parser.skipChildren();
+            }
+            return fullName;
+        }
+
+        // Mirrors JsonNode.asText(): scalars render as text, containers as the empty string
+        private static String scalarText(JsonParser parser, JsonToken value) throws IOException {
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                return "";
+            }
+            return parser.getText();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.gemini.webhooks.router.domain;
+
+import java.util.Optional;
+
+/**
+ * What the dispatcher needs to know about a webhook without reading its file again.
+ */
+public record WebhookClassification(String eventType, boolean dispatchable, Optional<Integer> issueNumber, Priority priority) {
+
+    public static WebhookClassification of(WebhookPayload payload, PriorityPolicy policy) {
+        return new WebhookClassification(payload.eventType(), payload.isDispatchable(), payload.issueNumber(),
+                policy.priorityOf(payload));
+    }
+}
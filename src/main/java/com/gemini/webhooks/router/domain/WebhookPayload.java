@@ -1,57 +1,29 @@
 package com.gemini.webhooks.router.domain;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Optional;
 
 public class WebhookPayload {
 
     private static final Logger logger = LoggerFactory.getLogger(WebhookPayload.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private final String json;
+    // Parsed lazily on first access; a racing second parse yields an identical value
+    private volatile RoutingFields fields;
 
     public WebhookPayload(String json) {
         this.json = json;
     }
 
     public Optional<Integer> issueNumber() {
-        try {
-            JsonNode root = objectMapper.readTree(json);
-            if (root.has("issue") && root.get("issue").has("number")) {
-                return Optional.of(root.get("issue").get("number").asInt());
-            }
-            if (root.has("pull_request") && root.get("pull_request").has("number")) {
-                return Optional.of(root.get("pull_request").get("number").asInt());
-            }
-            return Optional.empty();
-        } catch (Exception e) {
-            logger.warn("Failed to parse webhook JSON for issue number", e);
-            return Optional.empty();
-        }
+        return fields().issueNumber();
     }
 
     public String eventType() {
-        try {
-            JsonNode root = objectMapper.readTree(json);
-            String action = root.has("action") ? root.get("action").asText() : null;
-            if (root.has("issue") && action != null) {
-                return "issues." + action;
-            }
-            if (root.has("pull_request") && action != null) {
-                return "pull_request." + action;
-            }
-            if (root.has("ref") && root.has("commits")) {
-                return "push";
-            }
-            return "unknown";
-        } catch (Exception e) {
-            logger.warn("Failed to parse webhook JSON for event type", e);
-            return "unknown";
-        }
+        return fields().eventType();
     }
 
     public boolean isDispatchable() {
@@ -59,20 +31,35 @@ public class WebhookPayload {
     }
 
     public Optional<String> repoFullName() {
-        try {
-            JsonNode root = objectMapper.readTree(json);
-            JsonNode fullName = root.path("repository").path("full_name");
-            if (fullName.isMissingNode() || fullName.isNull()) {
-                return Optional.empty();
-            }
-            return Optional.of(fullName.asText());
-        } catch (Exception e) {
-            logger.warn("Failed to parse webhook JSON for repository name", e);
-            return Optional.empty();
-        }
+        return fields().repoFullName();
+    }
+
+    /**
+     * Names of the labels on the issue, or on the pull request for pull request events.
+     */
+    public List<String> labels() {
+        return fields().labels();
     }
 
     public String rawJson() {
         return json;
     }
+
+    private RoutingFields fields() {
+        RoutingFields extracted = fields;
+        if (extracted == null) {
+            extracted = extractFields(json);
+            fields = extracted;
+        }
+        return extracted;
+    }
+
+    private static RoutingFields extractFields(String json) {
+        try {
+            return RoutingFields.extract(json);
+        } catch (Exception e) {
+            logger.warn("Failed to parse webhook JSON", e);
+            return RoutingFields.UNPARSEABLE;
+        }
+    }
 }
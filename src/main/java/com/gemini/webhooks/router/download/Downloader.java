@@ -3,12 +3,14 @@ package com.gemini.webhooks.router.download;
 import com.gemini.webhooks.router.domain.WebhookFilename;
 import com.gemini.webhooks.router.domain.WebhookRecord;
 import com.gemini.webhooks.router.storage.TaskRepository;
+import com.gemini.webhooks.router.tasks.PendingClassifications;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,15 +21,28 @@ public class Downloader {
     private final DynamoDbSource source;
     private final TaskRepository repository;
     private final QuietHours quietHours;
+    private final PendingClassifications classifications;
+    private final NewTasksListener listener;
 
     public Downloader(DynamoDbSource source, TaskRepository repository) {
         this(source, repository, QuietHours.none());
     }
 
     public Downloader(DynamoDbSource source, TaskRepository repository, QuietHours quietHours) {
+        this(source, repository, quietHours, NewTasksListener.NONE);
+    }
+
+    public Downloader(DynamoDbSource source, TaskRepository repository, QuietHours quietHours, NewTasksListener listener) {
+        this(source, repository, quietHours, new PendingClassifications(), listener);
+    }
+
+    public Downloader(DynamoDbSource source, TaskRepository repository, QuietHours quietHours,
+                      PendingClassifications classifications, NewTasksListener listener) {
         this.source = source;
         this.repository = repository;
         this.quietHours = quietHours;
+        this.classifications = classifications;
+        this.listener = listener;
     }
 
     public void download() {
@@ -36,52 +51,78 @@ public class Downloader {
             return;
         }
 
-        List<WebhookRecord> records;
         try {
-            records = source.fetchAll();
+            source.forEachPage(this::processPage);
         } catch (Exception e) {
             logger.error("Failed to scan DynamoDB — will retry on next cycle", e);
-            return;
         }
+    }
 
-        for (WebhookRecord record : records) {
-            processRecord(record);
+    private void processPage(List<WebhookRecord> page) {
+        List<String> stored = new ArrayList<>();
+        List<String> created = new ArrayList<>();
+        for (WebhookRecord record : page) {
+            if (processRecord(record, created)) {
+                stored.add(record.deliveryId());
+            }
         }
+        try {
+            repository.commit(created);
+        } catch (IOException e) {
+            logger.error("Failed to make {} downloaded webhook(s) durable — keeping their DynamoDB records", created.size(), e);
+            return;
+        }
+        notifyListener(created);
+        deleteQuietly(stored);
     }
 
-    private void processRecord(WebhookRecord record) {
+    private boolean processRecord(WebhookRecord record, List<String> created) {
         Optional<String> repoFullName = record.repoFullName();
         if (repoFullName.isEmpty()) {
             logger.warn("Cannot determine repository for deliveryId: {}", record.deliveryId());
-            return;
+            return false;
+        }
+
+        if (repository.containsUniqueId(record.uniqueId())) {
+            logger.debug("Duplicate detected: webhook with uniqueId {} already stored, cleaning up DynamoDB", record.uniqueId());
+            return true;
         }
 
-        String uniqueIdSuffix = "_" + record.uniqueId() + ".json";
         WebhookFilename webhookFilename = WebhookFilename.create(Instant.now(), repoFullName.get(), record.uniqueId());
         String filename = webhookFilename.toFilename();
 
-        if (repository.listPending().stream().anyMatch(f -> f.endsWith(uniqueIdSuffix))) {
-            logger.debug("Duplicate detected: file with uniqueId {} already in pending/, cleaning up DynamoDB", record.uniqueId());
-            deleteQuietly(record.deliveryId());
-            return;
-        }
-
         try {
             repository.createPendingTask(filename, record.rawJson());
+            classifications.record(filename, record.payload());
             logger.info("Downloaded webhook {} → pending/{}", record.deliveryId(), filename);
+            created.add(filename);
         } catch (IOException e) {
             logger.error("Failed to write webhook to pending/ for deliveryId: {}", record.deliveryId(), e);
-            return;
+            return false;
         }
 
-        deleteQuietly(record.deliveryId());
+        return true;
     }
 
-    private void deleteQuietly(String deliveryId) {
+    private void notifyListener(List<String> created) {
+        if (created.isEmpty()) {
+            return;
+        }
+        try {
+            listener.tasksCreated(List.copyOf(created));
+        } catch (Exception e) {
+            logger.error("New tasks listener failed — tasks will be picked up by the next sweep", e);
+        }
+    }
+
+    private void deleteQuietly(List<String> deliveryIds) {
+        if (deliveryIds.isEmpty()) {
+            return;
+        }
         try {
-            source.delete(deliveryId);
+            source.deleteAll(deliveryIds);
         } catch (Exception e) {
-            logger.error("Failed to delete DynamoDB record {} after write — will be retried", deliveryId, e);
+            logger.error("Failed to delete DynamoDB records after write — will be retried", e);
         }
     }
 }
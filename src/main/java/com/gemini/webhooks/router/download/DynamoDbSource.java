@@ -6,41 +6,71 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 public class DynamoDbSource implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(DynamoDbSource.class);
+    // BatchWriteItem accepts at most 25 write requests per call
+    static final int MAX_BATCH_SIZE = 25;
+    private static final int MAX_BATCH_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 50;
 
     private final DynamoDbClient client;
     private final String tableName;
-    private final List<WebhookRecord> nullRecords;
+    private final int scanSegments;
+    private final List<List<WebhookRecord>> nullPages;
     private final List<DeleteTracker> deleteTrackers = new ArrayList<>();
     private final List<CloseTracker> closeTrackers = new ArrayList<>();
 
     public static DynamoDbSource create(String tableName) {
-        return new DynamoDbSource(DynamoDbClient.create(), tableName, null);
+        return create(tableName, 1);
+    }
+
+    public static DynamoDbSource create(String tableName, int scanSegments) {
+        return create(DynamoDbClient.create(), tableName, scanSegments);
+    }
+
+    static DynamoDbSource create(DynamoDbClient client, String tableName, int scanSegments) {
+        if (scanSegments < 1) {
+            throw new IllegalArgumentException("scanSegments must be at least 1, got: " + scanSegments);
+        }
+        return new DynamoDbSource(client, tableName, scanSegments, null);
     }
 
     public static DynamoDbSource createNull() {
-        return new DynamoDbSource(null, null, List.of());
+        return new DynamoDbSource(null, null, 1, List.of());
     }
 
     public static DynamoDbSource createNull(List<WebhookRecord> records) {
-        return new DynamoDbSource(null, null, List.copyOf(records));
+        return createNullPaged(records.isEmpty() ? List.of() : List.of(records));
+    }
+
+    public static DynamoDbSource createNullPaged(List<List<WebhookRecord>> pages) {
+        return new DynamoDbSource(null, null, 1, pages.stream().map(List::copyOf).toList());
     }
 
-    private DynamoDbSource(DynamoDbClient client, String tableName, List<WebhookRecord> nullRecords) {
+    private DynamoDbSource(DynamoDbClient client, String tableName, int scanSegments, List<List<WebhookRecord>> nullPages) {
         this.client = client;
         this.tableName = tableName;
-        this.nullRecords = nullRecords;
+        this.scanSegments = scanSegments;
+        this.nullPages = nullPages;
     }
 
     public DeleteTracker trackDeletes() {
@@ -58,49 +88,160 @@ public class DynamoDbSource implements AutoCloseable {
     @Override
     public void close() {
         closeTrackers.forEach(CloseTracker::record);
-        if (nullRecords != null) {
+        if (nullPages != null) {
             return;
         }
         client.close();
         logger.debug("DynamoDbClient closed.");
     }
 
-    public List<WebhookRecord> fetchAll() {
-        if (nullRecords != null) {
-            return nullRecords;
+    /**
+     * Streams the table page by page. With more than one scan segment the consumer is invoked
+     * concurrently from the segment workers, so it must be thread-safe.
+     */
+    public void forEachPage(Consumer<List<WebhookRecord>> pageConsumer) {
+        if (nullPages != null) {
+            nullPages.forEach(pageConsumer);
+            return;
+        }
+        if (scanSegments == 1) {
+            scanSegment(null, pageConsumer);
+            return;
+        }
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> segments = IntStream.range(0, scanSegments)
+                    .<Future<?>>mapToObj(segment -> workers.submit(() -> scanSegment(segment, pageConsumer)))
+                    .toList();
+            segments.forEach(DynamoDbSource::awaitSegment);
+        }
+    }
+
+    private void scanSegment(Integer segment, Consumer<List<WebhookRecord>> pageConsumer) {
+        int scanned = 0;
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanRequest.Builder request = ScanRequest.builder().tableName(tableName);
+            if (segment != null) {
+                request.segment(segment).totalSegments(scanSegments);
+            }
+            if (startKey != null) {
+                request.exclusiveStartKey(startKey);
+            }
+            ScanResponse response = client.scan(request.build());
+            List<WebhookRecord> page = response.items().stream()
+                    .map(DynamoDbSource::toRecord)
+                    .toList();
+            scanned += page.size();
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+            }
+            startKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                    ? response.lastEvaluatedKey()
+                    : null;
+        } while (startKey != null);
+        logger.debug("Scanned {} records from segment {}", scanned, segment == null ? 0 : segment);
+    }
+
+    private static void awaitSegment(Future<?> segment) {
+        try {
+            segment.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Parallel scan segment failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel scan segment", e);
         }
-        ScanResponse response = client.scan(ScanRequest.builder().tableName(tableName).build());
-        return response.items().stream()
-                .map(item -> {
-                    String deliveryId = item.get("deliveryId").s();
-                    String rawPayload = item.containsKey("payload") ? item.get("payload").s() : null;
-                    WebhookPayload payload = rawPayload != null ? new WebhookPayload(rawPayload) : null;
-                    return new WebhookRecord(deliveryId, payload);
-                })
-                .toList();
+    }
+
+    private static WebhookRecord toRecord(Map<String, AttributeValue> item) {
+        String deliveryId = item.get("deliveryId").s();
+        String rawPayload = item.containsKey("payload") ? item.get("payload").s() : null;
+        WebhookPayload payload = rawPayload != null ? new WebhookPayload(rawPayload) : null;
+        return new WebhookRecord(deliveryId, payload);
     }
 
     public void delete(String deliveryId) {
-        deleteTrackers.forEach(t -> t.add(deliveryId));
-        if (nullRecords != null) {
-            return;
+        deleteAll(List.of(deliveryId));
+    }
+
+    /**
+     * Deletes the given records in BatchWriteItem calls of up to 25 keys, retrying unprocessed
+     * items with exponential backoff. Every batch is attempted even if an earlier one fails.
+     */
+    public void deleteAll(List<String> deliveryIds) {
+        List<String> failedIds = new ArrayList<>();
+        for (int from = 0; from < deliveryIds.size(); from += MAX_BATCH_SIZE) {
+            List<String> batch = List.copyOf(deliveryIds.subList(from, Math.min(from + MAX_BATCH_SIZE, deliveryIds.size())));
+            deleteTrackers.forEach(t -> t.addBatch(batch));
+            if (nullPages != null) {
+                continue;
+            }
+            try {
+                writeDeleteBatch(batch);
+            } catch (RuntimeException e) {
+                logger.error("Failed to delete DynamoDB batch of {} records", batch.size(), e);
+                failedIds.addAll(batch);
+            }
+        }
+        if (!failedIds.isEmpty()) {
+            throw new IllegalStateException("Failed to delete DynamoDB records: " + failedIds);
+        }
+    }
+
+    private void writeDeleteBatch(List<String> batch) {
+        Map<String, List<WriteRequest>> requestItems = Map.of(tableName, batch.stream()
+                .map(deliveryId -> WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder().key(keyOf(deliveryId)).build())
+                        .build())
+                .toList());
+        for (int attempt = 1; ; attempt++) {
+            BatchWriteItemResponse response = client.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build());
+            if (!response.hasUnprocessedItems() || response.unprocessedItems().isEmpty()) {
+                logger.debug("Deleted {} DynamoDB records in {} attempt(s)", batch.size(), attempt);
+                return;
+            }
+            if (attempt == MAX_BATCH_ATTEMPTS) {
+                throw new IllegalStateException("Unprocessed items remain after %d attempts".formatted(attempt));
+            }
+            requestItems = response.unprocessedItems();
+            backOff(attempt);
+        }
+    }
+
+    private static void backOff(int attempt) {
+        long maxDelay = BASE_BACKOFF_MILLIS << (attempt - 1);
+        try {
+            Thread.sleep(maxDelay / 2 + ThreadLocalRandom.current().nextLong(maxDelay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off batch delete", e);
         }
-        client.deleteItem(DeleteItemRequest.builder()
-                .tableName(tableName)
-                .key(Map.of("deliveryId", AttributeValue.fromS(deliveryId)))
-                .build());
-        logger.debug("Deleted DynamoDB record: {}", deliveryId);
+    }
+
+    private static Map<String, AttributeValue> keyOf(String deliveryId) {
+        return Map.of("deliveryId", AttributeValue.fromS(deliveryId));
     }
 
     public static class DeleteTracker {
         private final List<String> deletedIds = new ArrayList<>();
+        private final List<List<String>> batches = new ArrayList<>();
+
+        synchronized void addBatch(List<String> batch) {
+            batches.add(batch);
+            deletedIds.addAll(batch);
+        }
 
-        void add(String deliveryId) {
-            deletedIds.add(deliveryId);
+        public synchronized List<String> deletedIds() {
+            return List.copyOf(deletedIds);
         }
 
-        public List<String> deletedIds() {
-            return Collections.unmodifiableList(deletedIds);
+        public synchronized List<List<String>> batches() {
+            return List.copyOf(batches);
         }
     }
 
@@ -0,0 +1,15 @@
+package com.gemini.webhooks.router.download;
+
+import java.util.List;
+
+/**
+ * Notified by the {@link Downloader} right after new webhook files have been written to pending/.
+ * The files stay the durable record; this is only a signal that there is fresh work.
+ */
+@FunctionalInterface
+public interface NewTasksListener {
+
+    NewTasksListener NONE = filenames -> {};
+
+    void tasksCreated(List<String> filenames);
+}
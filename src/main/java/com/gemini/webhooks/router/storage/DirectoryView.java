@@ -0,0 +1,99 @@
+package com.gemini.webhooks.router.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * The filenames in one directory, kept in memory so that listing it costs no system calls.
+ * <p>
+ * The repository reports its own changes through {@link #added} and {@link #removed}. Changes made by anyone
+ * else are picked up when the view is re-read from disk: after {@link #invalidate()}, or on the first listing
+ * once the reconcile interval has passed since the last read. Files a watcher saw appear are added one by one
+ * through {@link #addedExternally}. Callers change the directory first and report
+ * the change afterwards; a re-read holds the lock while it lists, so a change it missed is applied after it.
+ */
+final class DirectoryView {
+
+    private final Path directory;
+    private final long reconcileNanos;
+    private final LongSupplier nanoTime;
+    // Guarded by this
+    private final Set<String> filenames = new LinkedHashSet<>();
+    private boolean stale = true;
+    private long readAt;
+
+    DirectoryView(Path directory, Duration reconcileInterval) {
+        this(directory, reconcileInterval, System::nanoTime);
+    }
+
+    DirectoryView(Path directory, Duration reconcileInterval, LongSupplier nanoTime) {
+        this.directory = directory;
+        this.reconcileNanos = reconcileInterval.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    synchronized List<String> list() {
+        if (stale || nanoTime.getAsLong() - readAt >= reconcileNanos) {
+            reread();
+        }
+        return List.copyOf(filenames);
+    }
+
+    synchronized void added(String filename) {
+        filenames.add(filename);
+    }
+
+    synchronized void removed(String filename) {
+        filenames.remove(filename);
+    }
+
+    /**
+     * Adds a file reported by a watcher if it is still in the directory. Files this view already holds, such
+     * as the repository's own renames into it, cost nothing.
+     */
+    synchronized void addedExternally(String filename) {
+        if (stale || filenames.contains(filename)) {
+            return;
+        }
+        if (Files.isRegularFile(directory.toAbsolutePath().resolve(filename))) {
+            filenames.add(filename);
+        }
+    }
+
+    /**
+     * Re-reads the directory on the next listing, e.g. after a watcher reported a change.
+     */
+    synchronized void invalidate() {
+        stale = true;
+    }
+
+    private void reread() {
+        Path path = directory.toAbsolutePath();
+        List<String> onDisk;
+        if (Files.notExists(path)) {
+            onDisk = List.of();
+        } else {
+            try (Stream<Path> paths = Files.list(path)) {
+                onDisk = paths
+                        .filter(Files::isRegularFile)
+                        .map(p -> p.getFileName().toString())
+                        .toList();
+            } catch (IOException e) {
+                // Keep what is known and try again on the next listing
+                stale = true;
+                return;
+            }
+        }
+        filenames.clear();
+        filenames.addAll(onDisk);
+        readAt = nanoTime.getAsLong();
+        stale = false;
+    }
+}
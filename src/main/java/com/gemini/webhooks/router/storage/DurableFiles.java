@@ -0,0 +1,64 @@
+package com.gemini.webhooks.router.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes files so that a crash leaves either the whole file or none of it: the content goes to a temporary
+ * file, is fsynced, and the temporary file is renamed into place.
+ */
+final class DurableFiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(DurableFiles.class);
+
+    private DurableFiles() {
+    }
+
+    /**
+     * Writes {@code content} to {@code file}, fsyncing it only if {@code force} is set.
+     */
+    static void write(Path file, String content, boolean force) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(content);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            if (force) {
+                out.force(true);
+            }
+        }
+    }
+
+    static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Renames a fully written and fsynced temporary file to {@code target}. The rename itself is durable
+     * once the target's directory has been fsynced.
+     */
+    static void publish(Path temp, Path target) throws IOException {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Makes a rename durable; not every platform can open a directory, so failure is only logged
+    static void forceDirectory(Path dir) {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not fsync directory {}: {}", dir, e.getMessage());
+        }
+    }
+}
@@ -9,59 +9,257 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+/**
+ * Stores each task as a file in the directory of its state.
+ * <p>
+ * A new task is written to incoming/, fsynced and renamed into pending/, so pending/ never holds a partly
+ * written file. With group commit, the fsyncs and renames wait for {@link #commit(Collection)}, which publishes
+ * the tasks a caller wrote and fsyncs pending/ once for all of them.
+ * <p>
+ * Listings of pending/ and processing/ come from a {@link DirectoryView} of each, updated as this repository
+ * creates and moves tasks, told about files others put in pending/ through {@link #pendingCreated}, and re-read
+ * from disk once per reconcile interval or after {@link #invalidateListings()}.
+ */
 public class FileSystemTaskRepository implements TaskRepository {
     private final static Logger logger = LoggerFactory.getLogger(FileSystemTaskRepository.class);
     private final FileBasedTasksConfig config;
+    private final UniqueIdIndex uniqueIds = new UniqueIdIndex();
+    private volatile boolean uniqueIdsSeeded = false;
+    private final boolean groupCommit;
+    // Written to incoming/ but not yet fsynced and renamed into pending/
+    private final Set<String> uncommitted = ConcurrentHashMap.newKeySet();
+    private final DirectoryView pendingView;
+    private final DirectoryView processingView;
 
     public static FileSystemTaskRepository create(FileBasedTasksConfig config) {
-        return new FileSystemTaskRepository(config);
+        return create(config, false);
     }
 
-    private FileSystemTaskRepository(FileBasedTasksConfig config) {
+    /**
+     * @param groupCommit make created tasks durable only on {@link #commit(Collection)}, sharing one directory fsync
+     */
+    public static FileSystemTaskRepository create(FileBasedTasksConfig config, boolean groupCommit) {
+        return create(config, groupCommit, Duration.ZERO);
+    }
+
+    /**
+     * @param listingReconcileInterval how long listings may be served from memory before pending/ and
+     *                                 processing/ are read again; {@link Duration#ZERO} reads them on every call
+     */
+    public static FileSystemTaskRepository create(FileBasedTasksConfig config, boolean groupCommit,
+                                                  Duration listingReconcileInterval) {
+        return new FileSystemTaskRepository(config, groupCommit, listingReconcileInterval);
+    }
+
+    private FileSystemTaskRepository(FileBasedTasksConfig config, boolean groupCommit, Duration listingReconcileInterval) {
         this.config = config;
+        this.groupCommit = groupCommit;
+        this.pendingView = new DirectoryView(config.pendingDir(), listingReconcileInterval);
+        this.processingView = new DirectoryView(config.processingDir(), listingReconcileInterval);
     }
 
     @Override
     public Path createPendingTask(String filename, String content) throws IOException {
+        seedUniqueIds();
         ensureFolderExists();
-        saveFile(filename, content);
+        Path temp = config.incomingDir().toAbsolutePath().resolve(filename);
+        // Indexed before it is written, so that a concurrent download of the same uniqueId sees it
+        uniqueIds.live(filename);
+        try {
+            DurableFiles.write(temp, content, !groupCommit);
+            if (groupCommit) {
+                uncommitted.add(filename);
+            } else {
+                DurableFiles.publish(temp, pendingPath(filename));
+                DurableFiles.forceDirectory(config.pendingDir().toAbsolutePath());
+                pendingView.added(filename);
+            }
+        } catch (IOException e) {
+            // The caller keeps the source record; forget the task so that it is stored again next time
+            Files.deleteIfExists(temp);
+            uniqueIds.forget(filename);
+            throw e;
+        }
         return config.pendingDir().resolve(filename);
     }
 
+    /**
+     * Publishes only {@code filenames}, so concurrent callers each commit, and fail, on their own tasks.
+     */
+    @Override
+    public void commit(Collection<String> filenames) throws IOException {
+        List<String> batch = filenames.stream().filter(uncommitted::remove).toList();
+        if (batch.isEmpty()) {
+            return;
+        }
+        Path incoming = config.incomingDir().toAbsolutePath();
+        int published = 0;
+        try {
+            for (String filename : batch) {
+                DurableFiles.force(incoming.resolve(filename));
+            }
+            for (String filename : batch) {
+                DurableFiles.publish(incoming.resolve(filename), pendingPath(filename));
+                pendingView.added(filename);
+                published++;
+            }
+        } catch (IOException e) {
+            // The caller keeps the source records. Tasks already in pending/ stay indexed, so theirs are
+            // recognized as duplicates; the rest are forgotten so that they are stored again next time
+            for (String filename : batch.subList(published, batch.size())) {
+                Files.deleteIfExists(incoming.resolve(filename));
+                uniqueIds.forget(filename);
+            }
+            throw e;
+        } finally {
+            if (published > 0) {
+                DurableFiles.forceDirectory(config.pendingDir().toAbsolutePath());
+            }
+        }
+        logger.debug("Committed {} pending task(s)", batch.size());
+    }
+
+    /**
+     * Deletes tasks left in incoming/ by a crash before they reached pending/. Their source records were
+     * never deleted, so they are downloaded again. Must run before anything is created.
+     *
+     * @return the number of files deleted
+     */
+    public int discardIncomplete() throws IOException {
+        Path incoming = config.incomingDir().toAbsolutePath();
+        if (Files.notExists(incoming)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (Stream<Path> paths = Files.list(incoming)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                Files.deleteIfExists(path);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            logger.warn("Discarded {} incompletely written task(s) from {}", deleted, incoming);
+        }
+        return deleted;
+    }
+
     @Override
     public List<String> listPending() {
-        return listDirectory(config.pendingDir());
+        return pendingView.list();
     }
 
     @Override
     public List<String> listProcessing() {
-        return listDirectory(config.processingDir());
+        return processingView.list();
+    }
+
+    /**
+     * Adds files a watcher saw appear in pending/ to its listing, without reading the directory again.
+     */
+    public void pendingCreated(Collection<String> filenames) {
+        filenames.forEach(pendingView::addedExternally);
+    }
+
+    /**
+     * Reads pending/ and processing/ from disk on their next listing, e.g. after a watcher saw files added.
+     */
+    public void invalidateListings() {
+        pendingView.invalidate();
+        processingView.invalidate();
     }
 
     @Override
     public Path move(String filename, Path fromDir, Path toDir) throws IOException {
-        Path source = fromDir.toAbsolutePath().resolve(filename);
+        seedUniqueIds();
+        Path source = config.shardFor(fromDir, filename).toAbsolutePath().resolve(filename);
         if (Files.notExists(source)) {
+            viewOf(fromDir).ifPresent(view -> view.removed(filename));
             throw new NoSuchFileException(source.toString());
         }
-        Path destinationDir = toDir.toAbsolutePath();
+        Path destinationDir = config.shardFor(toDir, filename).toAbsolutePath();
         if (Files.notExists(destinationDir)) {
             Files.createDirectories(destinationDir);
         }
         Path destination = destinationDir.resolve(filename);
-        Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            if (Files.notExists(source)) {
+                throw e;
+            }
+            // The archive removed the shard as empty right after it was created
+            Files.createDirectories(destinationDir);
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+        }
+        viewOf(fromDir).ifPresent(view -> view.removed(filename));
+        viewOf(toDir).ifPresent(view -> view.added(filename));
+        boolean wasLive = viewOf(fromDir).isPresent();
+        boolean isLive = viewOf(toDir).isPresent();
+        if (wasLive && !isLive) {
+            uniqueIds.finished(filename, Instant.now());
+        } else if (!wasLive && isLive) {
+            uniqueIds.live(filename);
+        }
         return destination;
     }
 
-    private List<String> listDirectory(Path directory) {
+    @Override
+    public String read(String filename, Path dir) throws IOException {
+        return Files.readString(config.shardFor(dir, filename).toAbsolutePath().resolve(filename));
+    }
+
+    @Override
+    public boolean containsUniqueId(String uniqueId) {
+        seedUniqueIds();
+        return uniqueIds.contains(uniqueId, Instant.now());
+    }
+
+    private void seedUniqueIds() {
+        if (uniqueIdsSeeded) {
+            return;
+        }
+        // Seeded before this repository changes anything on disk, so no task is counted twice
+        synchronized (uniqueIds) {
+            if (uniqueIdsSeeded) {
+                return;
+            }
+            List.of(config.pendingDir(), config.processingDir())
+                    .forEach(dir -> listTree(dir).forEach(uniqueIds::live));
+            Instant now = Instant.now();
+            List.of(config.completedDir(), config.failedDir(), config.skippedDir())
+                    .forEach(dir -> listTree(dir).forEach(filename -> uniqueIds.seedFinished(filename, now)));
+            uniqueIdsSeeded = true;
+            logger.debug("Seeded uniqueId index with {} entries", uniqueIds.size());
+        }
+    }
+
+    private Optional<DirectoryView> viewOf(Path dir) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        if (normalized.equals(config.pendingDir().toAbsolutePath().normalize())) {
+            return Optional.of(pendingView);
+        }
+        if (normalized.equals(config.processingDir().toAbsolutePath().normalize())) {
+            return Optional.of(processingView);
+        }
+        return Optional.empty();
+    }
+
+    // Files directly in the directory and, with the sharded layout, in its per-day shards
+    private List<String> listTree(Path directory) {
         Path path = directory.toAbsolutePath();
         if (Files.notExists(path)) {
             return List.of();
         }
-        try (Stream<Path> paths = Files.list(path)) {
+        try (Stream<Path> paths = Files.walk(path, 2)) {
             return paths
                     .filter(Files::isRegularFile)
                     .map(p -> p.getFileName().toString())
@@ -71,14 +269,16 @@ public class FileSystemTaskRepository implements TaskRepository {
         }
     }
 
-    private void saveFile(String filename, String content) throws IOException {
-        Files.writeString(config.pendingDir().toAbsolutePath().resolve(filename), content);
+    private Path pendingPath(String filename) {
+        return config.pendingDir().toAbsolutePath().resolve(filename);
     }
 
     private void ensureFolderExists() throws IOException {
-        Path path = config.pendingDir().toAbsolutePath();
-        if (Files.notExists(path)) {
-            Files.createDirectories(path);
+        for (Path dir : List.of(config.pendingDir(), config.incomingDir())) {
+            Path path = dir.toAbsolutePath();
+            if (Files.notExists(path)) {
+                Files.createDirectories(path);
+            }
         }
     }
 }
@@ -0,0 +1,513 @@
+package com.gemini.webhooks.router.storage;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps tasks in an append-only journal under {@code <storageRoot>/journal} instead of one file per task.
+ * <p>
+ * Creating a task appends its content; moving it between state directories appends a one-line record, so a
+ * transition costs a single write. The current state of every task is held in memory and rebuilt by replaying
+ * the journal on startup. A call returns once its record is on disk: concurrent writers share one fsync.
+ * <p>
+ * Each record is one line, {@code <crc32> <json>}. A record cut short by a crash fails its checksum; replay
+ * stops there and truncates it and anything after it. {@link #compact()} moves completed, failed and skipped
+ * tasks to {@code archive.jsonl} and rewrites the journal with the remaining ones. The archive is never read
+ * back in full: the names of archived tasks still inside the duplicate window are kept apart in
+ * {@code archive-recent.txt}.
+ * <p>
+ * Directories are only names of states here: nothing is written to pending/ or the other state directories.
+ */
+public class JournalTaskRepository implements TaskRepository, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JournalTaskRepository.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final String JOURNAL_FILE = "journal.log";
+    static final String ARCHIVE_FILE = "archive.jsonl";
+    // Archive length before the batch of an unfinished compaction, followed by the batch's filenames
+    static final String ARCHIVE_MARKER_FILE = "archive.jsonl.compacting";
+    // Filenames of archived tasks received within UniqueIdIndex.RECENT_WINDOW, one per line
+    static final String ARCHIVE_INDEX_FILE = "archive-recent.txt";
+    private static final String PENDING = "pending";
+    private static final String PROCESSING = "processing";
+    private static final Set<String> FINISHED = Set.of("completed", "failed", "skipped");
+
+    private final FileBasedTasksConfig config;
+    private final Path journalDir;
+    private final Path journalFile;
+    private final Path archiveFile;
+    private final Path archiveMarker;
+    private final Path archiveIndex;
+    // Guarded by this
+    private FileChannel channel;
+    private long appendedPosition;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Set<String>> filenamesByState = new HashMap<>();
+    // Lock order: syncLock before this
+    private final Object syncLock = new Object();
+    private long durablePosition;
+    private final UniqueIdIndex uniqueIds = new UniqueIdIndex();
+    private volatile boolean archiveSeeded = false;
+
+    /**
+     * Opens the journal, creating it if needed, and replays it into memory.
+     */
+    public static JournalTaskRepository create(FileBasedTasksConfig config) throws IOException {
+        JournalTaskRepository repository = new JournalTaskRepository(config);
+        repository.replay();
+        return repository;
+    }
+
+    private JournalTaskRepository(FileBasedTasksConfig config) {
+        this.config = config;
+        this.journalDir = config.storageRoot().resolve("journal");
+        this.journalFile = journalDir.resolve(JOURNAL_FILE);
+        this.archiveFile = journalDir.resolve(ARCHIVE_FILE);
+        this.archiveMarker = journalDir.resolve(ARCHIVE_MARKER_FILE);
+        this.archiveIndex = journalDir.resolve(ARCHIVE_INDEX_FILE);
+    }
+
+    @Override
+    public Path createPendingTask(String filename, String content) throws IOException {
+        ObjectNode record = MAPPER.createObjectNode()
+                .put("op", "create")
+                .put("file", filename)
+                .put("content", content);
+        long end;
+        synchronized (this) {
+            byte[] line = encode(record);
+            long offset = appendedPosition;
+            end = append(line);
+            index(filename, new Entry(PENDING, offset, line.length));
+        }
+        uniqueIds.live(filename);
+        awaitDurable(end);
+        return config.pendingDir().resolve(filename);
+    }
+
+    @Override
+    public synchronized List<String> listPending() {
+        return List.copyOf(filenamesByState.getOrDefault(PENDING, Set.of()));
+    }
+
+    @Override
+    public synchronized List<String> listProcessing() {
+        return List.copyOf(filenamesByState.getOrDefault(PROCESSING, Set.of()));
+    }
+
+    @Override
+    public Path move(String filename, Path fromDir, Path toDir) throws IOException {
+        String from = stateOf(fromDir);
+        String to = stateOf(toDir);
+        ObjectNode record = MAPPER.createObjectNode()
+                .put("op", "move")
+                .put("file", filename)
+                .put("from", from)
+                .put("to", to);
+        long end;
+        synchronized (this) {
+            Entry entry = entries.get(filename);
+            if (entry == null || !entry.state().equals(from)) {
+                throw new NoSuchFileException(fromDir.toAbsolutePath().resolve(filename).toString());
+            }
+            end = append(encode(record));
+            index(filename, entry.withState(to));
+        }
+        if (!FINISHED.contains(from) && FINISHED.contains(to)) {
+            uniqueIds.finished(filename, Instant.now());
+        } else if (FINISHED.contains(from) && !FINISHED.contains(to)) {
+            uniqueIds.live(filename);
+        }
+        awaitDurable(end);
+        return toDir.toAbsolutePath().resolve(filename);
+    }
+
+    @Override
+    public synchronized String read(String filename, Path dir) throws IOException {
+        Entry entry = entries.get(filename);
+        if (entry == null || !entry.state().equals(stateOf(dir))) {
+            throw new NoSuchFileException(dir.toAbsolutePath().resolve(filename).toString());
+        }
+        return contentOf(filename, entry);
+    }
+
+    @Override
+    public boolean containsUniqueId(String uniqueId) {
+        seedArchivedUniqueIds();
+        return uniqueIds.contains(uniqueId, Instant.now());
+    }
+
+    /**
+     * Appends completed, failed and skipped tasks to the archive and rewrites the journal without them.
+     * The new journal replaces the old one with an atomic rename, so a crash leaves one or the other.
+     * If the old one is left, the next compaction first cuts the archive back to where the interrupted one
+     * started, so no task is archived twice.
+     *
+     * @return the number of tasks archived
+     */
+    public int compact() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                discardInterruptedArchive();
+                List<String> finished = entries.entrySet().stream()
+                        .filter(e -> FINISHED.contains(e.getValue().state()))
+                        .map(Map.Entry::getKey)
+                        .toList();
+                if (finished.isEmpty()) {
+                    return 0;
+                }
+                archive(finished);
+
+                Path compacted = journalDir.resolve(JOURNAL_FILE + ".compact");
+                Map<String, Entry> live = new LinkedHashMap<>();
+                try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                        if (FINISHED.contains(e.getValue().state())) {
+                            continue;
+                        }
+                        ObjectNode record = MAPPER.createObjectNode()
+                                .put("op", "create")
+                                .put("file", e.getKey())
+                                .put("state", e.getValue().state())
+                                .put("content", contentOf(e.getKey(), e.getValue()));
+                        byte[] line = encode(record);
+                        writeFully(out, line, position);
+                        live.put(e.getKey(), new Entry(e.getValue().state(), position, line.length));
+                        position += line.length;
+                    }
+                    out.force(true);
+                }
+                channel.close();
+                boolean replaced = false;
+                try {
+                    Files.move(compacted, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    replaced = true;
+                    DurableFiles.forceDirectory(journalDir);
+                } finally {
+                    // Whichever journal is in place now, appends and reads go on against it
+                    openChannel();
+                    durablePosition = appendedPosition;
+                    if (replaced) {
+                        entries.clear();
+                        filenamesByState.clear();
+                        live.forEach(this::index);
+                    }
+                }
+                Files.deleteIfExists(archiveMarker);
+                logger.info("Compacted journal: archived {} finished task(s), {} remain", finished.size(), live.size());
+                return finished.size();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void replay() throws IOException {
+        Files.createDirectories(journalDir);
+        long validEnd = 0;
+        int records = 0;
+        if (Files.exists(journalFile)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(journalFile))) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                int b;
+                while ((b = in.read()) != -1) {
+                    line.write(b);
+                    if (b != '\n') {
+                        continue;
+                    }
+                    byte[] bytes = line.toByteArray();
+                    line.reset();
+                    Optional<JsonNode> record = decode(bytes, bytes.length - 1);
+                    if (record.isEmpty()) {
+                        break;
+                    }
+                    apply(record.get(), validEnd, bytes.length);
+                    validEnd += bytes.length;
+                    records++;
+                }
+            }
+        }
+        openChannel();
+        if (appendedPosition > validEnd) {
+            logger.warn("Truncating {} bytes of incomplete or corrupt records from the end of {}",
+                    appendedPosition - validEnd, journalFile);
+            channel.truncate(validEnd);
+            channel.force(true);
+            appendedPosition = validEnd;
+        }
+        durablePosition = appendedPosition;
+        Instant now = Instant.now();
+        entries.forEach((filename, entry) -> {
+            if (FINISHED.contains(entry.state())) {
+                uniqueIds.seedFinished(filename, now);
+            } else {
+                uniqueIds.live(filename);
+            }
+        });
+        logger.info("Replayed {} journal record(s): {} pending, {} processing", records,
+                listPending().size(), listProcessing().size());
+    }
+
+    private void apply(JsonNode record, long offset, int length) {
+        String filename = record.path("file").asText();
+        switch (record.path("op").asText()) {
+            case "create" -> index(filename, new Entry(record.path("state").asText(PENDING), offset, length));
+            case "move" -> {
+                Entry entry = entries.get(filename);
+                if (entry != null) {
+                    index(filename, entry.withState(record.path("to").asText()));
+                }
+            }
+            default -> logger.warn("Ignoring journal record with unknown op: {}", record);
+        }
+    }
+
+    private void archive(List<String> finished) throws IOException {
+        try (FileChannel out = FileChannel.open(archiveFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            Path temp = journalDir.resolve(ARCHIVE_MARKER_FILE + ".tmp");
+            DurableFiles.write(temp, out.size() + "\n" + String.join("\n", finished), true);
+            DurableFiles.publish(temp, archiveMarker);
+            DurableFiles.forceDirectory(journalDir);
+            for (String filename : finished) {
+                Entry entry = entries.get(filename);
+                ObjectNode record = MAPPER.createObjectNode()
+                        .put("file", filename)
+                        .put("state", entry.state())
+                        .put("content", contentOf(filename, entry));
+                out.write(ByteBuffer.wrap((MAPPER.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+            out.force(true);
+        }
+        indexArchived(finished);
+    }
+
+    /**
+     * Rewrites the index of recently archived tasks with {@code archived} added and those received before the
+     * window dropped, so it stays as small as the window. A task archived again after an interrupted
+     * compaction is listed once. Caller holds this.
+     */
+    private void indexArchived(List<String> archived) throws IOException {
+        Instant cutoff = Instant.now().minus(UniqueIdIndex.RECENT_WINDOW);
+        Set<String> recent = new LinkedHashSet<>(archivedRecently());
+        recent.addAll(archived);
+        recent.removeIf(filename -> !receivedAfter(filename, cutoff));
+        Path temp = journalDir.resolve(ARCHIVE_INDEX_FILE + ".tmp");
+        DurableFiles.write(temp, String.join("\n", recent), true);
+        DurableFiles.publish(temp, archiveIndex);
+    }
+
+    /**
+     * Filenames of archived tasks received within the duplicate window. An archive written before the index
+     * existed is scanned instead, reading no further into each record than its filename.
+     */
+    private List<String> archivedRecently() throws IOException {
+        if (Files.exists(archiveIndex)) {
+            return Files.readAllLines(archiveIndex).stream().filter(line -> !line.isEmpty()).toList();
+        }
+        List<String> filenames = new ArrayList<>();
+        if (!Files.exists(archiveFile)) {
+            return filenames;
+        }
+        Instant cutoff = Instant.now().minus(UniqueIdIndex.RECENT_WINDOW);
+        try (JsonParser parser = MAPPER.getFactory().createParser(archiveFile.toFile())) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    if (field.equals("file") && receivedAfter(parser.getText(), cutoff)) {
+                        filenames.add(parser.getText());
+                    }
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            // A record cut short by a crash ends the archive; the names read before it still count
+            logger.warn("Stopped reading archived tasks from {}: {}", archiveFile, e.getMessage());
+        }
+        return filenames;
+    }
+
+    private static boolean receivedAfter(String filename, Instant cutoff) {
+        return WebhookFilename.parse(filename) instanceof WebhookFilename webhook && webhook.timestamp().isAfter(cutoff);
+    }
+
+    /**
+     * Undoes the archive writes of a compaction that stopped before its journal replaced the old one. Its
+     * tasks are still in the journal and are archived again by this compaction. Caller holds this.
+     */
+    private void discardInterruptedArchive() throws IOException {
+        if (!Files.exists(archiveMarker)) {
+            return;
+        }
+        List<String> marker = Files.readAllLines(archiveMarker);
+        boolean journalReplaced = marker.stream().skip(1).noneMatch(entries::containsKey);
+        if (!journalReplaced && !marker.isEmpty()) {
+            long start = Long.parseLong(marker.getFirst());
+            try (FileChannel out = FileChannel.open(archiveFile, StandardOpenOption.WRITE)) {
+                if (out.size() > start) {
+                    logger.warn("Discarding {} bytes archived by an interrupted compaction", out.size() - start);
+                    out.truncate(start);
+                    out.force(true);
+                }
+            }
+        }
+        Files.delete(archiveMarker);
+    }
+
+    // Caller holds this
+    private String contentOf(String filename, Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                throw new IOException("Journal ends inside the record of " + filename);
+            }
+        }
+        byte[] line = buffer.array();
+        return decode(line, line.length - 1)
+                .map(record -> record.path("content").asText())
+                .orElseThrow(() -> new IOException("Journal record of " + filename + " is corrupt"));
+    }
+
+    // Caller holds this
+    private void index(String filename, Entry entry) {
+        Entry previous = entries.put(filename, entry);
+        if (previous != null) {
+            filenamesByState.getOrDefault(previous.state(), new LinkedHashSet<>()).remove(filename);
+        }
+        filenamesByState.computeIfAbsent(entry.state(), state -> new LinkedHashSet<>()).add(filename);
+    }
+
+    // Caller holds this
+    private long append(byte[] line) throws IOException {
+        writeFully(channel, line, appendedPosition);
+        appendedPosition += line.length;
+        return appendedPosition;
+    }
+
+    /**
+     * Blocks until the journal is on disk up to {@code position}. Whoever gets here first forces everything
+     * appended so far; writers that appended in the meantime find their records already covered.
+     */
+    private void awaitDurable(long position) throws IOException {
+        synchronized (syncLock) {
+            if (durablePosition >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = appendedPosition;
+                current = channel;
+            }
+            current.force(false);
+            durablePosition = target;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        appendedPosition = channel.size();
+    }
+
+    private void seedArchivedUniqueIds() {
+        if (archiveSeeded) {
+            return;
+        }
+        synchronized (uniqueIds) {
+            if (archiveSeeded) {
+                return;
+            }
+            Instant now = Instant.now();
+            try {
+                archivedRecently().forEach(filename -> uniqueIds.seedFinished(filename, now));
+            } catch (IOException e) {
+                logger.error("Failed to read archived tasks from {}", archiveIndex, e);
+            }
+            archiveSeeded = true;
+        }
+    }
+
+    private static String stateOf(Path dir) {
+        return dir.getFileName().toString();
+    }
+
+    private static byte[] encode(ObjectNode record) throws IOException {
+        byte[] json = MAPPER.writeValueAsBytes(record);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(json.length + 10);
+        line.write("%08x ".formatted(crc.getValue()).getBytes(StandardCharsets.US_ASCII));
+        line.write(json);
+        line.write('\n');
+        return line.toByteArray();
+    }
+
+    /**
+     * Parses the record in {@code line[0, length)}, or returns empty if its checksum does not match.
+     */
+    private static Optional<JsonNode> decode(byte[] line, int length) {
+        if (length < 10 || line[8] != ' ') {
+            return Optional.empty();
+        }
+        try {
+            long expected = Long.parseLong(new String(line, 0, 8, StandardCharsets.US_ASCII), 16);
+            CRC32 crc = new CRC32();
+            crc.update(line, 9, length - 9);
+            if (crc.getValue() != expected) {
+                return Optional.empty();
+            }
+            return Optional.of(MAPPER.readTree(line, 9, length - 9));
+        } catch (NumberFormatException | IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void writeFully(FileChannel out, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer, position + buffer.position());
+        }
+    }
+
+    private record Entry(String state, long offset, int length) {
+        Entry withState(String newState) {
+            return new Entry(newState, offset, length);
+        }
+    }
+}
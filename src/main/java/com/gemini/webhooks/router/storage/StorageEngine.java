@@ -0,0 +1,15 @@
+package com.gemini.webhooks.router.storage;
+
+/**
+ * How task state is stored under the storage root.
+ */
+public enum StorageEngine {
+    /**
+     * One file per task, moved between the state directories.
+     */
+    FILES,
+    /**
+     * An append-only journal, see {@link JournalTaskRepository}.
+     */
+    JOURNAL
+}
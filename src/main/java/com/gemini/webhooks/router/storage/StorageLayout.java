@@ -0,0 +1,16 @@
+package com.gemini.webhooks.router.storage;
+
+/**
+ * How files are arranged within the directories that only ever grow: completed/, failed/, skipped/ and outputs/.
+ */
+public enum StorageLayout {
+    /**
+     * Every file directly in its directory.
+     */
+    FLAT,
+    /**
+     * One subdirectory per UTC day, e.g. {@code completed/2026-01-29/}: the day of the webhook for task files,
+     * the day the agent ran for outputs.
+     */
+    SHARDED
+}
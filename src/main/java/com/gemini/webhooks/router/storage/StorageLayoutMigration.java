@@ -0,0 +1,61 @@
+package com.gemini.webhooks.router.storage;
+
+import com.gemini.webhooks.router.FileBasedTasksConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Moves files from the flat layout into the per-day shards of {@link StorageLayout#SHARDED}.
+ * <p>
+ * Only files directly in completed/, failed/, skipped/ and outputs/ are moved, so running it again, or on a
+ * storage root that is already partly sharded, is safe. It must run while the daemon is stopped.
+ */
+public class StorageLayoutMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageLayoutMigration.class);
+
+    private StorageLayoutMigration() {
+    }
+
+    /**
+     * @return the number of files moved
+     */
+    public static int migrateToSharded(FileBasedTasksConfig config) throws IOException {
+        FileBasedTasksConfig sharded = config.withLayout(StorageLayout.SHARDED);
+        int moved = 0;
+        for (Path dir : List.of(sharded.completedDir(), sharded.failedDir(), sharded.skippedDir())) {
+            for (Path file : filesDirectlyIn(dir)) {
+                moveInto(file, sharded.shardFor(dir, file.getFileName().toString()));
+                moved++;
+            }
+        }
+        // Output names carry no webhook timestamp; they go to the day they were last written
+        for (Path file : filesDirectlyIn(sharded.outputsDir())) {
+            moveInto(file, sharded.outputsDirFor(Files.getLastModifiedTime(file).toInstant()));
+            moved++;
+        }
+        logger.info("Moved {} file(s) into the sharded layout under {}", moved, config.storageRoot());
+        return moved;
+    }
+
+    private static List<Path> filesDirectlyIn(Path dir) throws IOException {
+        if (Files.notExists(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private static void moveInto(Path file, Path shard) throws IOException {
+        Files.createDirectories(shard);
+        Files.move(file, shard.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,336 @@
+package com.gemini.webhooks.router.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rolls finished task files older than a maximum age out of completed/, failed/ and skipped/ into one
+ * compressed segment per UTC day under {@code <storageRoot>/archive}.
+ * <p>
+ * A segment, {@code <day>.jsonl.gz}, holds one JSON line per task with its filename, state and content. Each
+ * compaction appends a new gzip member to it, which readers see as one stream. Next to it,
+ * {@code <day>.index.jsonl} lists the filename, uniqueId, repository and state of every task in the segment,
+ * so tasks can be found without decompressing anything, and the length of the segment once it held them.
+ * Segment and index are fsynced before the task files are deleted, and the index is replaced atomically. A
+ * compaction interrupted before its index was replaced left its task files in place, so the next one first
+ * cuts the segment back to the length the index records and archives them again; a task interrupted after
+ * it was indexed is deleted by the next compaction without being archived twice.
+ */
+public class TaskArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskArchive.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+    static final String SEGMENT_SUFFIX = ".jsonl.gz";
+    static final String INDEX_SUFFIX = ".index.jsonl";
+
+    private final FileBasedTasksConfig config;
+    private final Path archiveDir;
+    private final Duration maxAge;
+
+    /**
+     * @param maxAge {@link Duration#ZERO} disables compaction; tasks already archived can still be found
+     */
+    public TaskArchive(FileBasedTasksConfig config, Duration maxAge) {
+        this.config = config;
+        this.archiveDir = config.archiveDir();
+        this.maxAge = maxAge;
+    }
+
+    public boolean isEnabled() {
+        return maxAge.isPositive();
+    }
+
+    public int compact() throws IOException {
+        return compact(Instant.now());
+    }
+
+    /**
+     * @return the number of task files archived
+     */
+    public synchronized int compact(Instant now) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Instant cutoff = now.minus(maxAge);
+        Map<String, List<TaskFile>> byDay = new TreeMap<>();
+        for (Path dir : List.of(config.completedDir(), config.failedDir(), config.skippedDir())) {
+            String state = dir.getFileName().toString();
+            for (Path file : listTree(dir)) {
+                Optional<Instant> time = timeOf(file);
+                if (time.isPresent() && time.get().isBefore(cutoff)) {
+                    byDay.computeIfAbsent(DAY_FORMATTER.format(time.get()), day -> new ArrayList<>())
+                            .add(new TaskFile(file, state));
+                }
+            }
+        }
+
+        int archived = 0;
+        for (Map.Entry<String, List<TaskFile>> day : byDay.entrySet()) {
+            archived += archiveDay(day.getKey(), day.getValue());
+        }
+        if (archived > 0) {
+            logger.info("Archived {} finished task(s) into {}", archived, archiveDir);
+        }
+        return archived;
+    }
+
+    /**
+     * Finds an archived task by the uniqueId in its filename.
+     */
+    public Optional<ArchivedTask> findByUniqueId(String uniqueId) throws IOException {
+        return find(entry -> entry.uniqueId().equals(uniqueId)).stream().findFirst();
+    }
+
+    /**
+     * Lists the archived tasks of a repository, oldest day first.
+     */
+    public List<ArchivedTask> findByRepo(String repoName) throws IOException {
+        return find(entry -> entry.repoName().equals(repoName));
+    }
+
+    /**
+     * Reads the content of an archived task back from its segment.
+     */
+    public String read(ArchivedTask task) throws IOException {
+        Path segment = archiveDir.resolve(task.day() + SEGMENT_SUFFIX);
+        try (BufferedReader reader = gzipReader(segment)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode record = MAPPER.readTree(line);
+                if (record.path("file").asText().equals(task.filename())) {
+                    return record.path("content").asText();
+                }
+            }
+        }
+        throw new NoSuchFileException(segment + "!" + task.filename());
+    }
+
+    private int archiveDay(String day, List<TaskFile> files) throws IOException {
+        Files.createDirectories(archiveDir);
+        Path index = archiveDir.resolve(day + INDEX_SUFFIX);
+        Set<String> indexed = new HashSet<>();
+        for (ArchivedTask task : readIndex(index, day)) {
+            indexed.add(task.filename());
+        }
+
+        List<TaskFile> written = new ArrayList<>();
+        List<TaskFile> appended = new ArrayList<>();
+        Path segment = archiveDir.resolve(day + SEGMENT_SUFFIX);
+        long segmentEnd;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long indexedEnd = indexedSegmentEnd(index);
+            if (channel.size() > indexedEnd) {
+                // Written by a compaction that stopped before indexing it; those task files are still in place
+                logger.warn("Discarding {} unindexed bytes at the end of {}", channel.size() - indexedEnd, segment);
+                channel.truncate(indexedEnd);
+            }
+            long start = channel.size();
+            channel.position(start);
+            // A new gzip member per compaction; GZIPInputStream reads concatenated members as one stream
+            try (GZIPOutputStream gzip = new GZIPOutputStream(uncloseable(Channels.newOutputStream(channel)))) {
+                for (TaskFile file : files) {
+                    String filename = file.path().getFileName().toString();
+                    if (indexed.contains(filename)) {
+                        // Archived by a compaction interrupted before it deleted the file
+                        written.add(file);
+                        continue;
+                    }
+                    String content;
+                    try {
+                        content = Files.readString(file.path());
+                    } catch (NoSuchFileException e) {
+                        // Requeued since it was listed
+                        continue;
+                    }
+                    ObjectNode record = MAPPER.createObjectNode()
+                            .put("file", filename)
+                            .put("state", file.state())
+                            .put("content", content);
+                    gzip.write((MAPPER.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8));
+                    appended.add(file);
+                    written.add(file);
+                }
+            } catch (IOException e) {
+                // Drop the partial member so the segment stays readable
+                channel.truncate(start);
+                throw e;
+            }
+            channel.force(true);
+            segmentEnd = channel.size();
+        }
+        if (!appended.isEmpty()) {
+            StringBuilder indexLines = new StringBuilder(Files.exists(index) ? Files.readString(index) : "");
+            for (TaskFile file : appended) {
+                ObjectNode record = indexRecord(file.path().getFileName().toString(), file.state(), segmentEnd);
+                indexLines.append(MAPPER.writeValueAsString(record)).append('\n');
+            }
+            Path temp = archiveDir.resolve(day + INDEX_SUFFIX + ".tmp");
+            DurableFiles.write(temp, indexLines.toString(), true);
+            DurableFiles.publish(temp, index);
+            DurableFiles.forceDirectory(archiveDir);
+        }
+
+        for (TaskFile file : written) {
+            Files.deleteIfExists(file.path());
+            deleteIfEmptyShard(file.path().getParent());
+        }
+        return written.size();
+    }
+
+    private List<ArchivedTask> find(Predicate<ArchivedTask> filter) throws IOException {
+        if (Files.notExists(archiveDir)) {
+            return List.of();
+        }
+        List<Path> indexes;
+        try (Stream<Path> paths = Files.list(archiveDir)) {
+            indexes = paths.filter(p -> p.getFileName().toString().endsWith(INDEX_SUFFIX)).sorted().toList();
+        }
+        List<ArchivedTask> found = new ArrayList<>();
+        for (Path index : indexes) {
+            String filename = index.getFileName().toString();
+            String day = filename.substring(0, filename.length() - INDEX_SUFFIX.length());
+            readIndex(index, day).stream().filter(filter).forEach(found::add);
+        }
+        return found;
+    }
+
+    private static List<ArchivedTask> readIndex(Path index, String day) throws IOException {
+        if (Files.notExists(index)) {
+            return List.of();
+        }
+        List<ArchivedTask> tasks = new ArrayList<>();
+        for (String line : Files.readAllLines(index)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode record = MAPPER.readTree(line);
+                tasks.add(new ArchivedTask(record.path("file").asText(), record.path("uniqueId").asText(),
+                        record.path("repo").asText(), record.path("state").asText(), day));
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable archive index line in {}", index);
+            }
+        }
+        return tasks;
+    }
+
+    // Length of the segment as of the latest compaction that indexed its tasks
+    private static long indexedSegmentEnd(Path index) throws IOException {
+        long end = 0;
+        if (Files.notExists(index)) {
+            return end;
+        }
+        for (String line : Files.readAllLines(index)) {
+            try {
+                end = Math.max(end, MAPPER.readTree(line).path("segmentEnd").asLong(0));
+            } catch (IOException e) {
+                // Reported by readIndex
+            }
+        }
+        return end;
+    }
+
+    private static ObjectNode indexRecord(String filename, String state, long segmentEnd) {
+        ObjectNode record = MAPPER.createObjectNode().put("file", filename);
+        if (WebhookFilename.parse(filename) instanceof WebhookFilename webhook) {
+            record.put("uniqueId", webhook.uniqueId()).put("repo", webhook.repoName());
+        }
+        return record.put("state", state).put("segmentEnd", segmentEnd);
+    }
+
+    // The webhook's timestamp, or when the file was last written if its name carries none
+    private static Optional<Instant> timeOf(Path file) {
+        if (WebhookFilename.parse(file.getFileName().toString()) instanceof WebhookFilename webhook) {
+            return Optional.of(webhook.timestamp());
+        }
+        try {
+            return Optional.of(Files.getLastModifiedTime(file).toInstant());
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Files directly in the directory and, with the sharded layout, in its per-day shards
+    private static List<Path> listTree(Path dir) throws IOException {
+        if (Files.notExists(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(dir, 2)) {
+            return paths.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private void deleteIfEmptyShard(Path dir) {
+        if (!config.isSharded(dir.getParent())) {
+            return;
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            if (entries.findAny().isEmpty()) {
+                Files.deleteIfExists(dir);
+            }
+        } catch (IOException e) {
+            // Still in use or already gone; left for the next compaction
+        }
+    }
+
+    private static BufferedReader gzipReader(Path segment) throws IOException {
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(segment)),
+                StandardCharsets.UTF_8));
+    }
+
+    // Lets the gzip stream finish its member without closing the channel before it is forced
+    private static OutputStream uncloseable(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * @param day the UTC day of the segment holding the task, e.g. {@code 2026-01-24}
+     */
+    public record ArchivedTask(String filename, String uniqueId, String repoName, String state, String day) {}
+
+    private record TaskFile(Path path, String state) {}
+}
@@ -2,6 +2,7 @@ package com.gemini.webhooks.router.storage;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
 public interface TaskRepository {
@@ -12,4 +13,24 @@ public interface TaskRepository {
     List<String> listProcessing() throws IOException;
 
     Path move(String filename, Path fromDir, Path toDir) throws IOException;
+
+    /**
+     * Content of the task stored under {@code filename} in {@code dir}.
+     *
+     * @throws java.nio.file.NoSuchFileException if no such task is in {@code dir}
+     */
+    String read(String filename, Path dir) throws IOException;
+
+    /**
+     * Makes the tasks created under {@code filenames} durable. Until then a crash may lose them, but never
+     * leaves a partly written task behind. Repositories that make each task durable as it is created need
+     * not override this.
+     */
+    default void commit(Collection<String> filenames) throws IOException {
+    }
+
+    /**
+     * Whether a webhook with this uniqueId is pending or processing, or finished within the last day.
+     */
+    boolean containsUniqueId(String uniqueId);
 }
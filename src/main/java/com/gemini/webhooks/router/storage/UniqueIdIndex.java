@@ -0,0 +1,99 @@
+package com.gemini.webhooks.router.storage;
+
+import com.gemini.webhooks.router.domain.WebhookFilename;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The uniqueIds a repository answers {@link TaskRepository#containsUniqueId} for: every task still pending
+ * or processing, and finished tasks received within {@link #RECENT_WINDOW}, at most {@link #MAX_RECENT} of them.
+ * <p>
+ * A uniqueId is only the first 32 bits of a deliveryId, so the index is kept small on purpose: a new delivery
+ * colliding with an old one would be taken for a duplicate and deleted from DynamoDB unprocessed. Duplicates
+ * come from records whose delete failed and are seen again on a later poll, which the window covers.
+ */
+final class UniqueIdIndex {
+
+    static final Duration RECENT_WINDOW = Duration.ofDays(1);
+    static final int MAX_RECENT = 100_000;
+
+    // Guarded by this; a uniqueId counts once per task holding it
+    private final Map<String, Integer> live = new HashMap<>();
+    // Guarded by this; in the order finished, which is close to the order received
+    private final LinkedHashMap<String, Instant> recent = new LinkedHashMap<>();
+
+    /**
+     * Records a task that entered pending/ or processing/.
+     */
+    synchronized void live(String filename) {
+        if (WebhookFilename.parse(filename) instanceof WebhookFilename webhook) {
+            live.merge(webhook.uniqueId(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Records a task that left pending/ and processing/ for a finished state.
+     */
+    synchronized void finished(String filename, Instant now) {
+        if (WebhookFilename.parse(filename) instanceof WebhookFilename webhook) {
+            release(webhook.uniqueId());
+            remember(webhook, now);
+        }
+    }
+
+    /**
+     * Drops a task that never became durable.
+     */
+    synchronized void forget(String filename) {
+        if (WebhookFilename.parse(filename) instanceof WebhookFilename webhook) {
+            release(webhook.uniqueId());
+        }
+    }
+
+    /**
+     * Records a finished task found on disk or in an archive, if it is recent enough to count.
+     */
+    synchronized void seedFinished(String filename, Instant now) {
+        if (WebhookFilename.parse(filename) instanceof WebhookFilename webhook) {
+            remember(webhook, now);
+        }
+    }
+
+    synchronized boolean contains(String uniqueId, Instant now) {
+        if (live.containsKey(uniqueId)) {
+            return true;
+        }
+        Instant received = recent.get(uniqueId);
+        return received != null && received.isAfter(now.minus(RECENT_WINDOW));
+    }
+
+    synchronized int size() {
+        return live.size() + recent.size();
+    }
+
+    private void release(String uniqueId) {
+        live.computeIfPresent(uniqueId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void remember(WebhookFilename webhook, Instant now) {
+        Instant cutoff = now.minus(RECENT_WINDOW);
+        if (!webhook.timestamp().isAfter(cutoff)) {
+            return;
+        }
+        recent.remove(webhook.uniqueId());
+        recent.put(webhook.uniqueId(), webhook.timestamp());
+        Iterator<Map.Entry<String, Instant>> oldest = recent.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Map.Entry<String, Instant> entry = oldest.next();
+            if (recent.size() <= MAX_RECENT && entry.getValue().isAfter(cutoff)) {
+                break;
+            }
+            oldest.remove();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.gemini.webhooks.router.tasks;
 
+import com.gemini.webhooks.router.domain.Priority;
 import com.gemini.webhooks.router.domain.ProcessableWebhook;
 
 import java.nio.file.Path;
@@ -9,11 +10,16 @@ import java.util.Optional;
 public interface AgentTasks {
     void recoverStuck(ActiveRepos repos);
 
-    List<AgentTask> listPending();
+    /**
+     * Lists pending/ once, moves invalid filenames to failed/ and unsupported events to skipped/,
+     * and returns the remaining dispatchable tasks.
+     */
+    List<AgentTask> sweepPending();
 
-    void clearInvalid();
-
-    void skipUnsupported();
+    /**
+     * Priority of a pending task as classified when it was downloaded or swept.
+     */
+    Priority priorityOf(AgentTask task);
 
     boolean startProcessing(AgentTask task);
 
@@ -1,7 +1,9 @@
 package com.gemini.webhooks.router.tasks;
 
 import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.Priority;
 import com.gemini.webhooks.router.domain.ProcessableWebhook;
+import com.gemini.webhooks.router.domain.WebhookClassification;
 import com.gemini.webhooks.router.domain.WebhookFilename;
 import com.gemini.webhooks.router.domain.WebhookPayload;
 import com.gemini.webhooks.router.storage.TaskRepository;
@@ -9,20 +11,54 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FileBasedAgentTasks implements AgentTasks {
 
     private static final Logger logger = LoggerFactory.getLogger(FileBasedAgentTasks.class);
     private final FileBasedTasksConfig config;
     private final TaskRepository tasks;
+    private final PendingClassifications classifications;
+    private final Duration coalesceWindow;
+    // Pending filenames merged into a pending task by the latest sweep, keyed by that task's filename;
+    // they stay in pending/ until the task starts, so a restart simply coalesces them again
+    private volatile Map<String, List<String>> coalesced = Map.of();
+    // Filenames moved to processing/ together with a running task, keyed by that task's filename
+    private final Map<String, List<String>> inFlight = new ConcurrentHashMap<>();
 
     public FileBasedAgentTasks(FileBasedTasksConfig config, TaskRepository tasks) {
+        this(config, tasks, new PendingClassifications());
+    }
+
+    public FileBasedAgentTasks(FileBasedTasksConfig config, TaskRepository tasks, PendingClassifications classifications) {
+        this(config, tasks, classifications, Duration.ZERO);
+    }
+
+    /**
+     * @param coalesceWindow webhooks for the same repository and issue whose timestamps lie within this
+     *                       window of the oldest dispatchable one are merged into a single run, including
+     *                       follow-up events such as edits or comments that would otherwise be skipped;
+     *                       {@link Duration#ZERO} disables coalescing
+     */
+    public FileBasedAgentTasks(FileBasedTasksConfig config, TaskRepository tasks, PendingClassifications classifications,
+                               Duration coalesceWindow) {
         this.config = config;
         this.tasks = tasks;
+        this.classifications = classifications;
+        this.coalesceWindow = coalesceWindow;
     }
 
     @Override
@@ -35,6 +71,7 @@ public class FileBasedAgentTasks implements AgentTasks {
                     if (!repos.isTaken(task.repoName())) {
                         logger.warn("Recovering stuck webhook: {}", filename);
                         tasks.move(filename, config.processingDir(), config.pendingDir());
+                        inFlight.remove(filename);
                     }
                 } catch (Exception e) {
                     logger.error("Failed to recover stuck webhook: {}", filename, e);
@@ -46,61 +83,158 @@ public class FileBasedAgentTasks implements AgentTasks {
     }
 
     @Override
-    public List<AgentTask> listPending() {
-        return tasks.listPending().stream()
-                .map(WebhookFilename::parse)
-                .toList();
+    public List<AgentTask> sweepPending() {
+        List<String> filenames = tasks.listPending();
+        classifications.retainOnly(filenames);
+
+        List<AgentTask> dispatchable = new ArrayList<>();
+        List<WebhookFilename> followUps = new ArrayList<>();
+        for (String filename : filenames) {
+            AgentTask task = WebhookFilename.parse(filename);
+            if (!task.isValid()) {
+                moveToFailed(filename);
+                continue;
+            }
+            Optional<WebhookClassification> classification = classify(filename);
+            if (classification.isEmpty()) {
+                continue;
+            }
+            if (classification.get().dispatchable()) {
+                dispatchable.add(task);
+            } else if (coalesceWindow.isPositive() && classification.get().issueNumber().isPresent()
+                    && task instanceof WebhookFilename webhook) {
+                followUps.add(webhook);
+            } else {
+                moveToSkipped(filename, classification.get());
+            }
+        }
+        if (coalesceWindow.isPositive()) {
+            return coalesce(dispatchable, followUps);
+        }
+        return dispatchable;
+    }
+
+    /**
+     * Keeps the oldest dispatchable task of every burst for the same repository and issue and records
+     * the later webhooks of the burst, dispatchable or follow-up events, as merged into it. Merged
+     * webhooks stay in pending/ until the kept task starts; follow-up events outside any burst are
+     * skipped.
+     */
+    private List<AgentTask> coalesce(List<AgentTask> dispatchable, List<WebhookFilename> followUps) {
+        List<AgentTask> kept = new ArrayList<>();
+        Map<String, List<WebhookFilename>> byIssue = new LinkedHashMap<>();
+        for (AgentTask task : dispatchable) {
+            Optional<Integer> issueNumber = classify(task.toFilename()).flatMap(WebhookClassification::issueNumber);
+            if (task instanceof WebhookFilename webhook && issueNumber.isPresent()) {
+                byIssue.computeIfAbsent(issueKey(webhook, issueNumber.get()), key -> new ArrayList<>()).add(webhook);
+            } else {
+                kept.add(task);
+            }
+        }
+        for (WebhookFilename followUp : followUps) {
+            Optional<Integer> issueNumber = classify(followUp.toFilename()).flatMap(WebhookClassification::issueNumber);
+            issueNumber.ifPresent(number ->
+                    byIssue.computeIfAbsent(issueKey(followUp, number), key -> new ArrayList<>()).add(followUp));
+        }
+
+        Set<WebhookFilename> followUpSet = new HashSet<>(followUps);
+        Map<String, List<String>> merged = new HashMap<>();
+        for (List<WebhookFilename> burst : byIssue.values()) {
+            burst.sort(Comparator.comparing(WebhookFilename::timestamp));
+            WebhookFilename anchor = null;
+            for (WebhookFilename webhook : burst) {
+                if (anchor != null && !webhook.timestamp().isAfter(anchor.timestamp().plus(coalesceWindow))) {
+                    merged.computeIfAbsent(anchor.toFilename(), key -> new ArrayList<>()).add(webhook.toFilename());
+                    logger.debug("Coalescing {} into {}", webhook.toFilename(), anchor.toFilename());
+                } else if (followUpSet.contains(webhook)) {
+                    classify(webhook.toFilename()).ifPresent(classification ->
+                            moveToSkipped(webhook.toFilename(), classification));
+                } else {
+                    anchor = webhook;
+                    kept.add(webhook);
+                }
+            }
+        }
+        coalesced = merged;
+        return kept;
+    }
+
+    private static String issueKey(WebhookFilename webhook, int issueNumber) {
+        return webhook.repoName() + "#" + issueNumber;
     }
 
     @Override
-    public void clearInvalid() {
-        tasks.listPending().stream()
-                .filter(filename -> !WebhookFilename.parse(filename).isValid())
-                .forEach(this::moveToFailed);
+    public Priority priorityOf(AgentTask task) {
+        return classify(task.toFilename())
+                .map(WebhookClassification::priority)
+                .orElse(Priority.NORMAL);
     }
 
     private void moveToFailed(String filename) {
         try {
             tasks.move(filename, config.pendingDir(), config.failedDir());
+            classifications.invalidate(filename);
             logger.info("Moved {} to failed directory", filename);
         } catch (IOException e) {
             logger.error("Failed to move invalid webhook to failed: {}", filename, e);
         }
     }
 
-    @Override
-    public void skipUnsupported() {
-        tasks.listPending().forEach(filename -> {
-            try {
-                String content = Files.readString(config.pendingDir().resolve(filename));
-                WebhookPayload payload = new WebhookPayload(content);
-                if (!payload.isDispatchable()) {
-                    tasks.move(filename, config.pendingDir(), config.skippedDir());
-                    logger.info("Skipped webhook {} with event type: {}", filename, payload.eventType());
-                }
-            } catch (IOException e) {
-                logger.error("Failed to check event type for: {}", filename, e);
-            }
-        });
+    private void moveToSkipped(String filename, WebhookClassification classification) {
+        try {
+            tasks.move(filename, config.pendingDir(), config.skippedDir());
+            classifications.invalidate(filename);
+            logger.info("Skipped webhook {} with event type: {}", filename, classification.eventType());
+        } catch (IOException e) {
+            logger.error("Failed to move unsupported webhook to skipped: {}", filename, e);
+        }
+    }
+
+    private Optional<WebhookClassification> classify(String filename) {
+        Optional<WebhookClassification> known = classifications.get(filename);
+        if (known.isPresent()) {
+            return known;
+        }
+        try {
+            String content = tasks.read(filename, config.pendingDir());
+            return Optional.of(classifications.record(filename, new WebhookPayload(content)));
+        } catch (IOException e) {
+            logger.error("Failed to check event type for: {}", filename, e);
+            return Optional.empty();
+        }
     }
 
     @Override
     public boolean startProcessing(AgentTask task) {
         try {
             tasks.move(task.toFilename(), config.pendingDir(), config.processingDir());
+            classifications.invalidate(task.toFilename());
             logger.info("Moved {} to processing directory", task.toFilename());
         } catch (IOException e) {
             logger.error("Failed to move file to processing: {}", task.toFilename(), e);
             return false;
         }
+        List<String> moved = new ArrayList<>();
+        for (String filename : coalesced.getOrDefault(task.toFilename(), List.of())) {
+            try {
+                tasks.move(filename, config.pendingDir(), config.processingDir());
+                classifications.invalidate(filename);
+                moved.add(filename);
+                logger.info("Coalesced {} into {}", filename, task.toFilename());
+            } catch (IOException e) {
+                // Already started on its own or gone; the run goes ahead without it
+                logger.warn("Failed to move coalesced webhook {} to processing", filename, e);
+            }
+        }
+        if (!moved.isEmpty()) {
+            inFlight.put(task.toFilename(), moved);
+        }
         return true;
     }
 
     private Optional<String> readContent(AgentTask task) {
         try {
-            Path processingFilePath = config.processingDir().resolve(task.toFilename());
-            String content = Files.readString(processingFilePath);
-            return Optional.of(content);
+            return Optional.of(tasks.read(task.toFilename(), config.processingDir()));
         } catch (IOException e) {
             logger.error("Failed to read webhook content from: {}", task.toFilename(), e);
             return Optional.empty();
@@ -109,28 +243,51 @@ public class FileBasedAgentTasks implements AgentTasks {
 
     @Override
     public Optional<ProcessableWebhook> prepareForProcessing(AgentTask task, Path outputDir) {
-        return readContent(task).map(content ->
-            new ProcessableWebhook(task, new WebhookPayload(content), outputDir)
+        List<String> merged = inFlight.get(task.toFilename());
+        Path outputShard = outputDir.equals(config.outputsDir()) ? config.outputsDirFor(Instant.now()) : outputDir;
+        return readContent(task).map(content -> merged == null
+                ? new ProcessableWebhook(task, new WebhookPayload(content), outputShard)
+                : new ProcessableWebhook(task, new WebhookPayload(content), combinedContent(content, merged), outputShard)
         );
     }
 
+    // The agent receives every payload of the burst, oldest first, as one JSON array
+    private String combinedContent(String content, List<String> merged) {
+        StringJoiner combined = new StringJoiner(",\n", "[\n", "\n]");
+        combined.add(content.strip());
+        for (String filename : merged) {
+            try {
+                combined.add(tasks.read(filename, config.processingDir()).strip());
+            } catch (IOException e) {
+                logger.error("Failed to read coalesced webhook content from: {}", filename, e);
+            }
+        }
+        return combined.toString();
+    }
+
     @Override
     public void completeTask(AgentTask task) {
-        try {
-            tasks.move(task.toFilename(), config.processingDir(), config.completedDir());
-            logger.info("Moved {} to completed directory", task.toFilename());
-        } catch (IOException e) {
-            logger.error("Failed to move file to completed directory: {}", task.toFilename(), e);
-        }
+        finish(task, config.completedDir(), "completed");
     }
 
     @Override
     public void failTask(AgentTask task) {
-        try {
-            tasks.move(task.toFilename(), config.processingDir(), config.failedDir());
-            logger.info("Moved {} to failed directory", task.toFilename());
-        } catch (IOException e) {
-            logger.error("Failed to move file to failed directory: {}", task.toFilename(), e);
+        finish(task, config.failedDir(), "failed");
+    }
+
+    // Webhooks coalesced into the task share its outcome
+    private void finish(AgentTask task, Path toDir, String label) {
+        List<String> filenames = new ArrayList<>();
+        filenames.add(task.toFilename());
+        filenames.addAll(inFlight.getOrDefault(task.toFilename(), List.of()));
+        for (String filename : filenames) {
+            try {
+                tasks.move(filename, config.processingDir(), toDir);
+                logger.info("Moved {} to {} directory", filename, label);
+            } catch (IOException e) {
+                logger.error("Failed to move file to {} directory: {}", label, filename, e);
+            }
         }
+        inFlight.remove(task.toFilename());
     }
 }
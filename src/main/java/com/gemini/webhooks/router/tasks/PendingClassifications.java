@@ -0,0 +1,51 @@
+package com.gemini.webhooks.router.tasks;
+
+import com.gemini.webhooks.router.domain.PriorityPolicy;
+import com.gemini.webhooks.router.domain.WebhookClassification;
+import com.gemini.webhooks.router.domain.WebhookPayload;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classifications of files in pending/, keyed by filename. Filled by the Downloader when it
+ * creates a task, or lazily on the first read; dropped once the file leaves pending/.
+ */
+public class PendingClassifications {
+
+    private final PriorityPolicy priorityPolicy;
+    private final Map<String, WebhookClassification> byFilename = new ConcurrentHashMap<>();
+
+    public PendingClassifications() {
+        this(PriorityPolicy.NONE);
+    }
+
+    public PendingClassifications(PriorityPolicy priorityPolicy) {
+        this.priorityPolicy = priorityPolicy;
+    }
+
+    public WebhookClassification record(String filename, WebhookPayload payload) {
+        WebhookClassification classification = WebhookClassification.of(payload, priorityPolicy);
+        record(filename, classification);
+        return classification;
+    }
+
+    public void record(String filename, WebhookClassification classification) {
+        byFilename.put(filename, classification);
+    }
+
+    public Optional<WebhookClassification> get(String filename) {
+        return Optional.ofNullable(byFilename.get(filename));
+    }
+
+    public void invalidate(String filename) {
+        byFilename.remove(filename);
+    }
+
+    public void retainOnly(Collection<String> filenames) {
+        byFilename.keySet().retainAll(new HashSet<>(filenames));
+    }
+}
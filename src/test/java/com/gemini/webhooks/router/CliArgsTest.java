@@ -1,20 +1,63 @@
 package com.gemini.webhooks.router;
 
+import com.gemini.webhooks.router.dispatch.OutputLimits;
+import com.gemini.webhooks.router.dispatch.PayloadDelivery;
+import com.gemini.webhooks.router.domain.Priority;
+import com.gemini.webhooks.router.domain.PriorityPolicy;
+import com.gemini.webhooks.router.domain.WebhookPayload;
+import com.gemini.webhooks.router.storage.StorageEngine;
+import com.gemini.webhooks.router.storage.StorageLayout;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CliArgsTest {
 
     private static CliArgs parse(String... args) {
         CliArgs cliArgs = new CliArgs();
         new CommandLine(cliArgs).parseArgs(args);
+        cliArgs.validate();
         return cliArgs;
     }
 
+    @Test
+    void numericOptionsOutOfRange_areRejected() {
+        List<List<String>> invalid = List.of(
+                List.of("--scan-segments", "0"),
+                List.of("--max-concurrent-agents", "0"),
+                List.of("--coalesce-window-seconds", "-1"),
+                List.of("--agent-timeout-minutes", "0"),
+                List.of("--adaptive-timeout-multiplier", "0.5"),
+                List.of("--adaptive-timeout-floor-seconds", "-1"),
+                List.of("--adaptive-timeout-ceiling-minutes", "0"),
+                List.of("--agent-workers", "-2"),
+                List.of("--agent-worker-max-tasks", "0"),
+                List.of("--output-max-bytes", "0"),
+                List.of("--output-retention-days", "-1"),
+                List.of("--outputs-max-total-mb", "-1"),
+                List.of("--listing-reconcile-seconds", "-1"),
+                List.of("--archive-after-days", "-1"));
+
+        for (List<String> args : invalid) {
+            assertThatThrownBy(() -> parse(args.toArray(String[]::new)))
+                    .isInstanceOf(CommandLine.ParameterException.class)
+                    .hasMessageContaining(args.getFirst());
+        }
+    }
+
+    @Test
+    void adaptiveTimeoutFloorAboveCeiling_isRejected() {
+        assertThatThrownBy(() -> parse("--adaptive-timeout-floor-seconds", "600", "--adaptive-timeout-ceiling-minutes", "5"))
+                .isInstanceOf(CommandLine.ParameterException.class)
+                .hasMessageContaining("--adaptive-timeout-ceiling-minutes");
+    }
+
     @Test
     void noArgs_usesAllDefaults() {
         FileBasedTasksConfig config = parse().toConfig();
@@ -64,6 +107,103 @@ class CliArgsTest {
         assertThat(config.tableName()).isEqualTo("ProdTable");
     }
 
+    @Test
+    void scanSegments_defaultsToSingleSegment() {
+        assertThat(parse().scanSegments()).isEqualTo(1);
+    }
+
+    @Test
+    void scanSegmentsFlag_overridesSegmentCount() {
+        assertThat(parse("--scan-segments", "4").scanSegments()).isEqualTo(4);
+    }
+
+    @Test
+    void watchPending_isEnabledByDefault() {
+        assertThat(parse().watchPending()).isTrue();
+    }
+
+    @Test
+    void noWatchPendingFlag_disablesWatching() {
+        assertThat(parse("--no-watch-pending").watchPending()).isFalse();
+    }
+
+    @Test
+    void maxConcurrentAgents_defaultsToFour() {
+        assertThat(parse().maxConcurrentAgents()).isEqualTo(4);
+    }
+
+    @Test
+    void maxConcurrentAgentsFlag_overridesLimit() {
+        assertThat(parse("--max-concurrent-agents", "16").maxConcurrentAgents()).isEqualTo(16);
+    }
+
+    @Test
+    void priorityPolicy_defaultsToUrgentLabelOnly() {
+        PriorityPolicy policy = parse().priorityPolicy();
+
+        assertThat(policy.priorityOf(new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1, "labels": [{"name": "urgent"}]}}
+                """))).isEqualTo(Priority.HIGH);
+    }
+
+    @Test
+    void keyReposAndUrgentLabelsFlags_configurePriorityPolicy() {
+        PriorityPolicy policy = parse("--key-repos", "owner/a,owner/b", "--urgent-labels", "p0").priorityPolicy();
+
+        assertThat(policy.priorityOf(new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1, "labels": [{"name": "p0"}]},
+                 "repository": {"full_name": "owner/b"}}
+                """))).isEqualTo(Priority.URGENT);
+        assertThat(policy.priorityOf(new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1, "labels": [{"name": "urgent"}]}}
+                """))).isEqualTo(Priority.NORMAL);
+    }
+
+    @Test
+    void agentWorkerCommand_isAbsentByDefault() {
+        assertThat(parse().agentWorkerCommand()).isEmpty();
+    }
+
+    @Test
+    void agentWorkerFlags_configureWorkerPool() {
+        CliArgs cliArgs = parse("--agent-worker-command", "gemini-worker --serve", "--agent-workers", "2",
+                "--agent-worker-max-tasks", "10");
+
+        assertThat(cliArgs.agentWorkerCommand()).contains(List.of("gemini-worker", "--serve"));
+        assertThat(cliArgs.agentWorkers()).isEqualTo(2);
+        assertThat(cliArgs.agentWorkerMaxTasks()).isEqualTo(10);
+    }
+
+    @Test
+    void payloadDelivery_defaultsToArgument() {
+        assertThat(parse().payloadDelivery()).isEqualTo(PayloadDelivery.ARGUMENT);
+    }
+
+    @Test
+    void payloadDeliveryFlag_selectsMode() {
+        assertThat(parse("--payload-delivery", "STDIN").payloadDelivery()).isEqualTo(PayloadDelivery.STDIN);
+    }
+
+    @Test
+    void agentTimeout_defaultsToFiveMinutes() {
+        assertThat(parse().agentTimeout()).isEqualTo(Duration.ofMinutes(5));
+    }
+
+    @Test
+    void agentTimeoutMinutesFlag_overridesTimeout() {
+        assertThat(parse("--agent-timeout-minutes", "20").agentTimeout()).isEqualTo(Duration.ofMinutes(20));
+    }
+
+    @Test
+    void coalesceWindow_isDisabledByDefault() {
+        assertThat(parse().coalesceWindow()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void coalesceWindowSecondsFlag_setsWindow() {
+        assertThat(parse("--coalesce-window-seconds", "15").coalesceWindow()).isEqualTo(Duration.ofSeconds(15));
+    }
+
     @Test
     void helpFlag_requestsUsageHelp() {
         CliArgs cliArgs = new CliArgs();
@@ -72,4 +212,107 @@ class CliArgsTest {
 
         assertThat(commandLine.isUsageHelpRequested()).isTrue();
     }
+
+    @Test
+    void outputLimits_defaultToTenMibUncompressed() {
+        assertThat(parse().outputLimits()).isEqualTo(OutputLimits.DEFAULT);
+    }
+
+    @Test
+    void outputFlags_overrideLimits() {
+        assertThat(parse("--output-max-bytes", "2048", "--compress-outputs").outputLimits())
+                .isEqualTo(new OutputLimits(2048, true));
+    }
+
+    @Test
+    void outputRetention_defaultsToThirtyDaysWithoutSizeLimit() {
+        CliArgs args = parse();
+
+        assertThat(args.outputRetention()).isEqualTo(Duration.ofDays(30));
+        assertThat(args.outputsMaxTotalBytes()).isZero();
+    }
+
+    @Test
+    void outputsMaxTotalMbFlag_setsLimitInBytes() {
+        assertThat(parse("--outputs-max-total-mb", "5").outputsMaxTotalBytes()).isEqualTo(5L * 1024 * 1024);
+    }
+
+    @Test
+    void adaptiveTimeouts_areDisabledByDefault() {
+        CliArgs args = parse();
+
+        assertThat(args.adaptiveTimeouts()).isFalse();
+        assertThat(args.adaptiveTimeoutMultiplier()).isEqualTo(3.0);
+        assertThat(args.adaptiveTimeoutFloor()).isEqualTo(Duration.ofSeconds(60));
+        assertThat(args.adaptiveTimeoutCeiling()).isEqualTo(Duration.ofMinutes(60));
+    }
+
+    @Test
+    void adaptiveTimeoutFlags_overrideDefaults() {
+        CliArgs args = parse("--adaptive-timeouts", "--adaptive-timeout-multiplier", "2.5",
+                "--adaptive-timeout-floor-seconds", "20", "--adaptive-timeout-ceiling-minutes", "120");
+
+        assertThat(args.adaptiveTimeouts()).isTrue();
+        assertThat(args.adaptiveTimeoutMultiplier()).isEqualTo(2.5);
+        assertThat(args.adaptiveTimeoutFloor()).isEqualTo(Duration.ofSeconds(20));
+        assertThat(args.adaptiveTimeoutCeiling()).isEqualTo(Duration.ofMinutes(120));
+    }
+
+    @Test
+    void storageEngine_defaultsToFiles() {
+        assertThat(parse().storageEngine()).isEqualTo(StorageEngine.FILES);
+    }
+
+    @Test
+    void storageEngineFlag_selectsJournal() {
+        assertThat(parse("--storage-engine", "JOURNAL").storageEngine()).isEqualTo(StorageEngine.JOURNAL);
+    }
+
+    @Test
+    void storageLayout_defaultsToFlat() {
+        CliArgs args = parse();
+
+        assertThat(args.toConfig().layout()).isEqualTo(StorageLayout.FLAT);
+        assertThat(args.migrateToShardedLayout()).isFalse();
+    }
+
+    @Test
+    void storageLayoutFlag_selectsSharded() {
+        assertThat(parse("--storage-layout", "SHARDED").toConfig().layout()).isEqualTo(StorageLayout.SHARDED);
+    }
+
+    @Test
+    void archiveAfter_defaultsToNever() {
+        assertThat(parse().archiveAfter()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void archiveAfterDaysFlag_setsAge() {
+        assertThat(parse("--archive-after-days", "14").archiveAfter()).isEqualTo(Duration.ofDays(14));
+    }
+
+    @Test
+    void groupCommit_defaultsToFalse() {
+        assertThat(parse().groupCommit()).isFalse();
+    }
+
+    @Test
+    void groupCommitFlag_enablesGroupCommit() {
+        assertThat(parse("--group-commit").groupCommit()).isTrue();
+    }
+
+    @Test
+    void listingReconcileInterval_defaultsToOneMinuteWhileWatchingPending() {
+        assertThat(parse().listingReconcileInterval()).isEqualTo(Duration.ofSeconds(60));
+    }
+
+    @Test
+    void listingReconcileInterval_defaultsToZeroWithoutWatcher() {
+        assertThat(parse("--no-watch-pending").listingReconcileInterval()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void listingReconcileSecondsFlag_setsInterval() {
+        assertThat(parse("--listing-reconcile-seconds", "30").listingReconcileInterval()).isEqualTo(Duration.ofSeconds(30));
+    }
 }
@@ -0,0 +1,105 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveTimeoutsTest {
+
+    private static final Duration FLOOR = Duration.ofSeconds(30);
+    private static final Duration CEILING = Duration.ofMinutes(30);
+
+    private final AgentMetrics metrics = new AgentMetrics();
+
+    @Test
+    void timeoutFor_isEmptyWithoutEnoughHistory() {
+        recordRuns("my-repo", 19, 10_000);
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(metrics, 3.0, FLOOR, CEILING, 20);
+
+        assertThat(timeouts.timeoutFor("my-repo")).isEmpty();
+        assertThat(timeouts.timeoutFor("unknown-repo")).isEmpty();
+    }
+
+    @Test
+    void timeoutFor_isNinetyNinthPercentileTimesMultiplier() {
+        recordRuns("my-repo", 99, 20_000);
+        recordRuns("my-repo", 1, 40_000);
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(metrics, 3.0, FLOOR, CEILING, 20);
+
+        assertThat(timeouts.timeoutFor("my-repo")).isEqualTo(Optional.of(Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void timeoutFor_ignoresFailedRuns() {
+        recordRuns("my-repo", 20, 20_000);
+        metrics.record(new RunMetrics("my-repo", Instant.now(), 300_000, RunMetrics.UNKNOWN, RunMetrics.UNKNOWN,
+                0, 1, RunMetrics.Outcome.EXITED));
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(metrics, 3.0, FLOOR, CEILING, 20);
+
+        assertThat(timeouts.timeoutFor("my-repo")).isEqualTo(Optional.of(Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void timeoutFor_growsTowardsCeilingWhileRunsKeepTimingOut() {
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(metrics, 3.0, FLOOR, CEILING, 20);
+
+        recordTimeout("my-repo", Duration.ofMinutes(5));
+        assertThat(timeouts.timeoutFor("my-repo")).isEqualTo(Optional.of(Duration.ofMinutes(10)));
+
+        recordTimeout("my-repo", Duration.ofMinutes(10));
+        recordTimeout("my-repo", Duration.ofMinutes(20));
+        assertThat(timeouts.timeoutFor("my-repo")).isEqualTo(Optional.of(CEILING));
+    }
+
+    @Test
+    void timeoutFor_returnsToHistoryOnceARunExitsInTime() {
+        recordRuns("my-repo", 20, 20_000);
+        recordTimeout("my-repo", Duration.ofMinutes(1));
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(metrics, 3.0, FLOOR, CEILING, 20);
+        assertThat(timeouts.timeoutFor("my-repo")).isEqualTo(Optional.of(Duration.ofMinutes(2)));
+
+        recordRuns("my-repo", 1, 20_000);
+
+        assertThat(timeouts.timeoutFor("my-repo")).isEqualTo(Optional.of(Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void timeoutFor_isClampedBetweenFloorAndCeiling() {
+        recordRuns("fast-repo", 20, 1_000);
+        recordRuns("slow-repo", 20, 20 * 60_000);
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(metrics, 3.0, FLOOR, CEILING, 20);
+
+        assertThat(timeouts.timeoutFor("fast-repo")).isEqualTo(Optional.of(FLOOR));
+        assertThat(timeouts.timeoutFor("slow-repo")).isEqualTo(Optional.of(CEILING));
+    }
+
+    @Test
+    void disabled_neverReturnsATimeout() {
+        recordRuns("my-repo", 50, 10_000);
+
+        assertThat(AdaptiveTimeouts.disabled().timeoutFor("my-repo")).isEmpty();
+    }
+
+    @Test
+    void create_rejectsFloorAboveCeiling() {
+        assertThatThrownBy(() -> AdaptiveTimeouts.create(metrics, 3.0, CEILING, FLOOR))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void recordRuns(String repoName, int count, long wallMillis) {
+        for (int i = 0; i < count; i++) {
+            metrics.record(new RunMetrics(repoName, Instant.now(), wallMillis, RunMetrics.UNKNOWN, RunMetrics.UNKNOWN,
+                    0, 0, RunMetrics.Outcome.EXITED));
+        }
+    }
+
+    private void recordTimeout(String repoName, Duration wallTime) {
+        metrics.record(new RunMetrics(repoName, Instant.now(), wallTime.toMillis(), RunMetrics.UNKNOWN, RunMetrics.UNKNOWN,
+                0, 143, RunMetrics.Outcome.TIMED_OUT));
+    }
+}
@@ -0,0 +1,95 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentMetricsTest {
+
+    private static final Instant STARTED = Instant.parse("2026-03-01T12:00:00Z");
+
+    @Test
+    void stats_isEmptyForRepositoryWithoutRuns() {
+        assertThat(new AgentMetrics().stats("my-repo")).isEmpty();
+    }
+
+    @Test
+    void record_aggregatesRunsPerRepository() {
+        AgentMetrics metrics = new AgentMetrics();
+
+        metrics.record(run("my-repo", 1000, 0, RunMetrics.Outcome.EXITED));
+        metrics.record(run("my-repo", 3000, 1, RunMetrics.Outcome.EXITED));
+        metrics.record(run("my-repo", 5000, 143, RunMetrics.Outcome.TIMED_OUT));
+        metrics.record(run("other-repo", 7000, 0, RunMetrics.Outcome.EXITED));
+
+        AgentMetrics.RepoStats stats = metrics.stats("my-repo").orElseThrow();
+        assertThat(stats.runs()).isEqualTo(3);
+        assertThat(stats.failures()).isEqualTo(2);
+        assertThat(stats.timeouts()).isEqualTo(1);
+        assertThat(stats.meanWallMillis()).isEqualTo(3000);
+        assertThat(stats.maxWallMillis()).isEqualTo(5000);
+        assertThat(stats.totalCpuMillis()).isEqualTo(300);
+        assertThat(stats.maxPeakRssBytes()).isEqualTo(2048);
+        assertThat(stats.totalOutputBytes()).isEqualTo(30);
+        assertThat(stats.recentSuccessWallMillis()).containsExactly(1000L);
+        assertThat(metrics.snapshot().keySet()).containsExactly("my-repo", "other-repo");
+    }
+
+    @Test
+    void record_keepsOnlyTheLatestSuccessfulWallTimes() {
+        AgentMetrics metrics = new AgentMetrics();
+
+        for (int i = 0; i <= AgentMetrics.RECENT_RUNS; i++) {
+            metrics.record(run("my-repo", i, 0, RunMetrics.Outcome.EXITED));
+        }
+
+        List<Long> recent = metrics.stats("my-repo").orElseThrow().recentSuccessWallMillis();
+        assertThat(recent).hasSize(AgentMetrics.RECENT_RUNS);
+        assertThat(recent.getFirst()).isEqualTo(1L);
+    }
+
+    @Test
+    void record_ignoresUnknownValuesInTotals() {
+        AgentMetrics metrics = new AgentMetrics();
+
+        metrics.record(new RunMetrics("my-repo", STARTED, 100, RunMetrics.UNKNOWN, RunMetrics.UNKNOWN,
+                RunMetrics.UNKNOWN, 0, RunMetrics.Outcome.EXITED));
+
+        AgentMetrics.RepoStats stats = metrics.stats("my-repo").orElseThrow();
+        assertThat(stats.totalCpuMillis()).isZero();
+        assertThat(stats.maxPeakRssBytes()).isEqualTo(RunMetrics.UNKNOWN);
+        assertThat(stats.totalOutputBytes()).isZero();
+    }
+
+    @Test
+    void restore_aggregatesWithoutNotifyingListeners() {
+        AgentMetrics metrics = new AgentMetrics();
+        List<RunMetrics> seen = new ArrayList<>();
+        metrics.addListener(seen::add);
+
+        metrics.restore(run("my-repo", 1000, 0, RunMetrics.Outcome.EXITED));
+
+        assertThat(metrics.stats("my-repo").orElseThrow().runs()).isEqualTo(1);
+        assertThat(seen).isEmpty();
+    }
+
+    @Test
+    void record_notifiesListeners() {
+        AgentMetrics metrics = new AgentMetrics();
+        List<RunMetrics> seen = new ArrayList<>();
+        metrics.addListener(seen::add);
+        RunMetrics run = run("my-repo", 1000, 0, RunMetrics.Outcome.EXITED);
+
+        metrics.record(run);
+
+        assertThat(seen).containsExactly(run);
+    }
+
+    private static RunMetrics run(String repoName, long wallMillis, int exitCode, RunMetrics.Outcome outcome) {
+        return new RunMetrics(repoName, STARTED, wallMillis, 100, 1024L * (1 + exitCode % 2), 10, exitCode, outcome);
+    }
+}
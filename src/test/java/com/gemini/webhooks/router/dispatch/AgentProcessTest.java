@@ -3,7 +3,15 @@ package com.gemini.webhooks.router.dispatch;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -66,4 +74,215 @@ class AgentProcessTest {
         assertThat(result.errorMessage()).contains("Repository directory not found");
     }
 
+    @Test
+    void executeAsync_completesWithExitCodeOfProcess() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10), List.of("sh", "-c", "exit 3", "sh"));
+
+        AgentProcess.ProcessResult result = agentProcess.executeAsync("my-repo", "payload", tempDir.resolve("out/output.txt")).join();
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.errorMessage()).isEqualTo("Agent process exited with code: 3");
+    }
+
+    @Test
+    void executeAsync_passesWebhookContentAsLastArgument() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10), List.of("sh", "-c", "echo \"$1\"", "sh"));
+
+        AgentProcess.ProcessResult result = agentProcess.executeAsync("my-repo", "{\"action\": \"opened\"}", outputFile).join();
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(outputFile)).isEqualTo("{\"action\": \"opened\"}\n");
+    }
+
+    @Test
+    void executeAsync_failsOnceTheProcessExitsAfterTimeout() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "trap 'echo terminated; exit 143' TERM; sleep 30 & wait", "sh"));
+
+        AgentProcess.ProcessResult result = agentProcess
+                .executeAsync("my-repo", "payload", outputFile, Duration.ofMillis(500))
+                .join();
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.errorMessage()).contains("timed out");
+        assertThat(result.metrics().outcome()).isEqualTo(RunMetrics.Outcome.TIMED_OUT);
+        assertThat(Files.readString(outputFile)).contains("terminated");
+    }
+
+    @Test
+    void executeAsync_keepsPayloadFileUntilTimedOutProcessExits() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "trap 'cat \"${1#@}\"; exit 143' TERM; sleep 30 & wait", "sh"), PayloadDelivery.FILE);
+
+        agentProcess.executeAsync("my-repo", "{\"action\": \"opened\"}", outputFile, Duration.ofMillis(500)).join();
+
+        assertThat(Files.readString(outputFile)).contains("{\"action\": \"opened\"}");
+        assertThat(tempDir.resolve("output.txt.payload.json")).doesNotExist();
+    }
+
+    @Test
+    void executeAsync_cancellingTheRunSendsSigterm() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "trap 'echo terminated; exit 143' TERM; echo started; sleep 30 & wait", "sh"));
+
+        CompletableFuture<AgentProcess.ProcessResult> run = agentProcess.executeAsync("my-repo", "payload", outputFile);
+        awaitContent(outputFile, "started");
+        run.cancel(true);
+
+        assertThat(run.isCancelled()).isTrue();
+        awaitContent(outputFile, "terminated");
+    }
+
+    @Test
+    void shutdown_terminatesRunsThatOutlastTheDrainTimeout() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10), List.of("sh", "-c", "sleep 30", "sh"));
+        CompletableFuture<AgentProcess.ProcessResult> run = agentProcess.executeAsync("my-repo", "payload", tempDir.resolve("output.txt"));
+
+        agentProcess.shutdown(Duration.ofMillis(100));
+
+        assertThat(run.isCancelled()).isTrue();
+    }
+
+    @Test
+    void createNull_executeAsyncCompletesImmediately() {
+        AgentProcess agentProcess = AgentProcess.createNull();
+
+        CompletableFuture<AgentProcess.ProcessResult> run = agentProcess.executeAsync("any-repo", "any content", tempDir.resolve("output.txt"));
+
+        assertThat(run.isDone()).isTrue();
+        assertThat(run.join().isSuccess()).isTrue();
+    }
+
+    @Test
+    void stdinDelivery_streamsPayloadInsteadOfPassingIt() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "echo \"args=$#\"; cat", "sh"), PayloadDelivery.STDIN);
+
+        AgentProcess.ProcessResult result = agentProcess.execute("my-repo", "{\"action\": \"opened\"}", outputFile);
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(outputFile)).isEqualTo("args=0\n{\"action\": \"opened\"}");
+    }
+
+    @Test
+    void fileDelivery_passesPathOfPayloadFileAndDeletesItAfterwards() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("outputs/output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "cat \"${1#@}\"", "sh"), PayloadDelivery.FILE);
+
+        AgentProcess.ProcessResult result = agentProcess.execute("my-repo", "{\"action\": \"opened\"}", outputFile);
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(outputFile)).isEqualTo("{\"action\": \"opened\"}");
+        assertThat(Files.list(outputFile.getParent()).toList()).containsExactly(outputFile);
+    }
+
+    @Test
+    void argumentDelivery_streamsPayloadTooLargeForOneArgumentOverStdin() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        String largePayload = "{\"body\": \"" + "x".repeat(AgentProcess.MAX_ARGUMENT_BYTES) + "\"}";
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "echo \"args=$#\"; cat", "sh"), PayloadDelivery.ARGUMENT);
+
+        AgentProcess.ProcessResult result = agentProcess.execute("my-repo", largePayload, outputFile);
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(outputFile)).isEqualTo("args=0\n" + largePayload);
+    }
+
+    @Test
+    void executeAsync_truncatesOutputBeyondTheByteLimit() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "printf 'abcdefghij'", "sh"), PayloadDelivery.ARGUMENT, new OutputLimits(4, false));
+
+        AgentProcess.ProcessResult result = agentProcess.execute("my-repo", "payload", outputFile);
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(outputFile)).startsWith("abcd\n[output truncated: limit of 4 bytes reached]")
+                .endsWith("[6 bytes of output dropped]\n");
+    }
+
+    @Test
+    void executeAsync_compressesOutputOnceTheRunFinishes() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "echo done", "sh"), PayloadDelivery.ARGUMENT, new OutputLimits(1024, true));
+
+        agentProcess.execute("my-repo", "payload", outputFile);
+
+        assertThat(Files.exists(outputFile)).isFalse();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(tempDir.resolve("output.txt.gz")))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("done\n");
+        }
+    }
+
+    @Test
+    void tail_returnsRecentOutputWhileTheAgentRuns() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        Path outputFile = tempDir.resolve("output.txt");
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "echo started; sleep 30", "sh"));
+
+        CompletableFuture<AgentProcess.ProcessResult> run = agentProcess.executeAsync("my-repo", "payload", outputFile);
+        awaitContent(outputFile, "started");
+
+        assertThat(agentProcess.tail(outputFile)).contains("started\n");
+        assertThat(agentProcess.tail(tempDir.resolve("other.txt"))).isEmpty();
+        run.cancel(true);
+    }
+
+    @Test
+    void executeAsync_recordsMetricsOfTheRun() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10),
+                List.of("sh", "-c", "echo hello; exit 2", "sh"));
+
+        AgentProcess.ProcessResult result = agentProcess.execute("my-repo", "payload", tempDir.resolve("output.txt"));
+
+        RunMetrics run = result.metrics();
+        assertThat(run.repoName()).isEqualTo("my-repo");
+        assertThat(run.exitCode()).isEqualTo(2);
+        assertThat(run.outcome()).isEqualTo(RunMetrics.Outcome.EXITED);
+        assertThat(run.outputBytes()).isEqualTo(6);
+        assertThat(run.wallMillis()).isGreaterThanOrEqualTo(0L);
+        assertThat(agentProcess.metrics().stats("my-repo").orElseThrow().failures()).isEqualTo(1);
+    }
+
+    @Test
+    void executeAsync_recordsTimedOutRunOnceTheProcessExits() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        AgentProcess agentProcess = AgentProcess.create(tempDir, Duration.ofSeconds(10), List.of("sh", "-c", "sleep 30", "sh"));
+
+        agentProcess.executeAsync("my-repo", "payload", tempDir.resolve("output.txt"), Duration.ofMillis(200)).join();
+
+        assertThat(agentProcess.metrics().stats("my-repo").orElseThrow().timeouts()).isEqualTo(1);
+    }
+
+    private static void awaitContent(Path file, String expected) throws IOException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (Files.exists(file) && Files.readString(file).contains(expected)) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        assertThat(Files.readString(file)).contains(expected);
+    }
 }
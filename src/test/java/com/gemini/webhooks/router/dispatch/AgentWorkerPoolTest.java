@@ -0,0 +1,148 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AgentWorkerPoolTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    @TempDir
+    Path tempDir;
+
+    private AgentWorkerPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void submit_runsTaskOnWorkerAndWritesItsOutput() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+        Path outputFile = tempDir.resolve("outputs/run.txt");
+
+        AgentProcess.ProcessResult result = pool.submit("my-repo", tempDir, "hello", outputFile, TIMEOUT).join();
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(outputFile)).contains("repo=my-repo", "payload=hello");
+    }
+
+    @Test
+    void submit_reusesTheSameWarmWorker() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+
+        pool.submit("my-repo", tempDir, "first", tempDir.resolve("first.txt"), TIMEOUT).join();
+        pool.submit("my-repo", tempDir, "second", tempDir.resolve("second.txt"), TIMEOUT).join();
+
+        assertThat(pidIn(tempDir.resolve("second.txt"))).isEqualTo(pidIn(tempDir.resolve("first.txt")));
+    }
+
+    @Test
+    void submit_replacesWorkerAfterMaxTasks() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 1);
+
+        pool.submit("my-repo", tempDir, "first", tempDir.resolve("first.txt"), TIMEOUT).join();
+        pool.submit("my-repo", tempDir, "second", tempDir.resolve("second.txt"), TIMEOUT).join();
+
+        assertThat(pidIn(tempDir.resolve("second.txt"))).isNotEqualTo(pidIn(tempDir.resolve("first.txt")));
+    }
+
+    @Test
+    void submit_reportsNonZeroExitCodeAsFailure() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+
+        AgentProcess.ProcessResult result = pool.submit("my-repo", tempDir, "fail", tempDir.resolve("run.txt"), TIMEOUT).join();
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.errorMessage()).contains("code: 2");
+        assertThat(result.metrics().exitCode()).isEqualTo(2);
+        assertThat(result.metrics().outcome()).isEqualTo(RunMetrics.Outcome.EXITED);
+    }
+
+    @Test
+    void submit_timedOutTaskKillsWorkerAndPoolKeepsServing() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+
+        AgentProcess.ProcessResult hung = pool.submit("my-repo", tempDir, "hang", tempDir.resolve("hung.txt"), Duration.ofSeconds(2)).join();
+        AgentProcess.ProcessResult next = pool.submit("my-repo", tempDir, "after", tempDir.resolve("after.txt"), TIMEOUT).join();
+
+        assertThat(hung.isSuccess()).isFalse();
+        assertThat(hung.errorMessage()).contains("timed out");
+        assertThat(hung.metrics().outcome()).isEqualTo(RunMetrics.Outcome.TIMED_OUT);
+        assertThat(next.isSuccess()).isTrue();
+    }
+
+    @Test
+    void submit_timeoutStartsOnlyOnceAWorkerTakesTheTask() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+
+        AgentWorkerPool.Run hung = pool.submit("my-repo", tempDir, "hang", tempDir.resolve("hung.txt"), Duration.ofSeconds(2));
+        AgentWorkerPool.Run queued = pool.submit("my-repo", tempDir, "after", tempDir.resolve("after.txt"), Duration.ofSeconds(1));
+        AgentWorkerPool.Run cancelled = pool.submit("my-repo", tempDir, "never", tempDir.resolve("never.txt"), TIMEOUT);
+        cancelled.cancel(false);
+
+        assertThat(hung.join().metrics().outcome()).isEqualTo(RunMetrics.Outcome.TIMED_OUT);
+        AgentProcess.ProcessResult next = queued.join();
+        assertThat(next.isSuccess()).isTrue();
+        assertThat(next.metrics().startedAt()).isAfterOrEqualTo(hung.startedAt().plusSeconds(2));
+        assertThat(cancelled.startedAt()).isNull();
+        assertThat(tempDir.resolve("never.txt")).doesNotExist();
+    }
+
+    @Test
+    void submit_afterClose_failsImmediately() throws IOException {
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+        pool.close();
+
+        AgentProcess.ProcessResult result = pool.submit("my-repo", tempDir, "late", tempDir.resolve("late.txt"), TIMEOUT).join();
+
+        assertThat(result.isSuccess()).isFalse();
+    }
+
+    @Test
+    void close_givesAllWorkersOneSharedGracePeriod() throws IOException {
+        // Ignores stdin closing, so every worker has to be killed once the grace period is over
+        pool = AgentWorkerPool.start(List.of("sh", "-c", "exec sleep 60"), tempDir, 3, 10);
+
+        long start = System.nanoTime();
+        pool.close();
+
+        Duration took = Duration.ofNanos(System.nanoTime() - start);
+        assertThat(took).isLessThan(AgentProcess.TERMINATION_GRACE.multipliedBy(2));
+    }
+
+    @Test
+    void start_rejectsEmptyCommand() {
+        assertThatThrownBy(() -> AgentWorkerPool.start(List.of(), tempDir, 1, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void pooledAgentProcess_runsAgentsOnTheWorkers() throws IOException {
+        Files.createDirectories(tempDir.resolve("my-repo"));
+        pool = AgentWorkerPool.start(EchoAgentWorker.command(), tempDir, 1, 10);
+        AgentProcess agentProcess = AgentProcess.createPooled(tempDir, TIMEOUT, pool);
+
+        AgentProcess.ProcessResult result = agentProcess.execute("my-repo", "payload", tempDir.resolve("out.txt"));
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(Files.readString(tempDir.resolve("out.txt"))).contains("repo=my-repo");
+    }
+
+    private static String pidIn(Path outputFile) throws IOException {
+        return Files.readString(outputFile).split(" ")[0];
+    }
+}
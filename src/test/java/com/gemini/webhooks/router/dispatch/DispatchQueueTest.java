@@ -0,0 +1,97 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.gemini.webhooks.router.domain.Priority;
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import com.gemini.webhooks.router.tasks.AgentTask;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchQueueTest {
+
+    private final DispatchQueue queue = new DispatchQueue();
+
+    @Test
+    void offer_ignoresTaskThatIsAlreadyQueued() {
+        AgentTask task = WebhookFilename.parse("2026-01-29T12:00:00.000Z_my-repo_abc12345.json");
+
+        assertThat(queue.offer(task)).isTrue();
+        assertThat(queue.offer(WebhookFilename.parse(task.toFilename()))).isFalse();
+        assertThat(queue.size()).isEqualTo(1);
+    }
+
+    @Test
+    void pollFor_returnsTasksOfOneRepoInArrivalOrder() {
+        AgentTask first = WebhookFilename.parse("2026-01-29T12:00:00.000Z_my-repo_abc12345.json");
+        AgentTask second = WebhookFilename.parse("2026-01-29T12:00:01.000Z_my-repo_def67890.json");
+        queue.offer(first);
+        queue.offer(second);
+
+        assertThat(queue.pollFor(repo -> true)).contains(first);
+        assertThat(queue.pollFor(repo -> true)).contains(second);
+        assertThat(queue.pollFor(repo -> true)).isEmpty();
+    }
+
+    @Test
+    void pollFor_skipsRepositoriesThatAreNotAvailable() {
+        AgentTask busy = WebhookFilename.parse("2026-01-29T12:00:00.000Z_busy-repo_abc12345.json");
+        AgentTask free = WebhookFilename.parse("2026-01-29T12:00:01.000Z_free-repo_def67890.json");
+        queue.offer(busy);
+        queue.offer(free);
+
+        assertThat(queue.pollFor(repo -> !repo.equals("busy-repo"))).contains(free);
+        assertThat(queue.size()).isEqualTo(1);
+    }
+
+    @Test
+    void pollFor_returnsOldestTaskFirstRegardlessOfArrivalOrder() {
+        AgentTask newer = WebhookFilename.parse("2026-01-29T12:00:05.000Z_my-repo_def67890.json");
+        AgentTask older = WebhookFilename.parse("2026-01-29T12:00:00.000Z_my-repo_abc12345.json");
+        queue.offer(newer);
+        queue.offer(older);
+
+        assertThat(queue.pollFor(repo -> true)).contains(older);
+        assertThat(queue.pollFor(repo -> true)).contains(newer);
+    }
+
+    @Test
+    void pollFor_startsWithRepoHoldingTheOldestTask() {
+        AgentTask later = WebhookFilename.parse("2026-01-29T12:00:05.000Z_repo-a_abc12345.json");
+        AgentTask earlier = WebhookFilename.parse("2026-01-29T12:00:00.000Z_repo-b_def67890.json");
+        queue.offer(later);
+        queue.offer(earlier);
+
+        assertThat(queue.pollFor(repo -> true)).contains(earlier);
+    }
+
+    @Test
+    void pollFor_alternatesBetweenRepositoriesSoNoisyRepoCannotStarveQuietOne() {
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:00.000Z_noisy-repo_00000001.json"));
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:01.000Z_noisy-repo_00000002.json"));
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:02.000Z_noisy-repo_00000003.json"));
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:03.000Z_quiet-repo_00000004.json"));
+
+        assertThat(queue.pollFor(repo -> true).map(AgentTask::repoName)).contains("noisy-repo");
+        assertThat(queue.pollFor(repo -> true).map(AgentTask::repoName)).contains("quiet-repo");
+        assertThat(queue.pollFor(repo -> true).map(AgentTask::repoName)).contains("noisy-repo");
+    }
+
+    @Test
+    void pollFor_servesHigherPriorityBeforeOlderTasksOfOtherRepos() {
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:00.000Z_busy-repo_00000001.json"));
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:01.000Z_busy-repo_00000002.json"));
+        queue.offer(WebhookFilename.parse("2026-01-29T12:00:09.000Z_key-repo_00000003.json"), Priority.URGENT);
+
+        assertThat(queue.pollFor(repo -> true).map(AgentTask::repoName)).contains("key-repo");
+    }
+
+    @Test
+    void pollFor_servesHigherPriorityFirstWithinRepo() {
+        AgentTask older = WebhookFilename.parse("2026-01-29T12:00:00.000Z_my-repo_abc12345.json");
+        AgentTask urgent = WebhookFilename.parse("2026-01-29T12:00:05.000Z_my-repo_def67890.json");
+        queue.offer(older);
+        queue.offer(urgent, Priority.HIGH);
+
+        assertThat(queue.pollFor(repo -> true)).contains(urgent);
+    }
+}
@@ -0,0 +1,51 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchTriggerTest {
+
+    private final AtomicInteger dispatches = new AtomicInteger();
+    private final List<Runnable> queue = new ArrayList<>();
+    private final DispatchTrigger trigger = new DispatchTrigger(dispatches::incrementAndGet, queue::add);
+
+    @Test
+    void request_queuesSingleDispatchForBurstOfRequests() {
+        trigger.request();
+        trigger.request();
+        trigger.request();
+
+        assertThat(queue).hasSize(1);
+        queue.getFirst().run();
+        assertThat(dispatches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void request_afterQueuedDispatchStarted_queuesAnotherOne() {
+        trigger.request();
+        queue.removeFirst().run();
+
+        trigger.request();
+
+        assertThat(queue).hasSize(1);
+    }
+
+    @Test
+    void request_whenDispatchThrows_allowsLaterRequests() {
+        AtomicInteger attempts = new AtomicInteger();
+        DispatchTrigger failing = new DispatchTrigger(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("boom");
+        }, Runnable::run);
+
+        failing.request();
+        failing.request();
+
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+}
@@ -1,9 +1,14 @@
 package com.gemini.webhooks.router.dispatch;
 
 import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.Priority;
+import com.gemini.webhooks.router.domain.PriorityPolicy;
+import com.gemini.webhooks.router.domain.WebhookClassification;
 import com.gemini.webhooks.router.storage.FileSystemTaskRepository;
+import com.gemini.webhooks.router.storage.JournalTaskRepository;
 import com.gemini.webhooks.router.storage.TaskRepository;
 import com.gemini.webhooks.router.tasks.FileBasedAgentTasks;
+import com.gemini.webhooks.router.tasks.PendingClassifications;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -11,10 +16,15 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class DispatcherTest {
 
@@ -244,4 +254,324 @@ class DispatcherTest {
         assertThat(submitted).hasSize(1);
         assertThat(Files.exists(config.pendingDir().resolve(filename2))).isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    void dispatch_doesNotRereadPendingFileAlreadyClassifiedAsDispatchable() throws IOException {
+        List<Runnable> submitted = new ArrayList<>();
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), agentProcess, submitted::add);
+
+        String issuesOpenedContent = """
+                {"action": "opened", "issue": {"number": 1}}
+                """;
+        String filename1 = "2026-01-29T12:00:00.000Z_same-repo_abc12345.json";
+        String filename2 = "2026-01-29T12:00:01.000Z_same-repo_def67890.json";
+        Files.writeString(config.pendingDir().resolve(filename1), issuesOpenedContent);
+        Files.writeString(config.pendingDir().resolve(filename2), issuesOpenedContent);
+        dispatcher.dispatch();
+
+        // the second task waits for the busy repo; a rewrite is invisible because it is not read again
+        String waiting = repository.listPending().getFirst();
+        Files.writeString(config.pendingDir().resolve(waiting), "{\"ref\": \"refs/heads/main\", \"commits\": []}");
+        dispatcher.dispatch();
+
+        assertThat(Files.exists(config.pendingDir().resolve(waiting))).isTrue();
+        assertThat(Files.exists(config.skippedDir().resolve(waiting))).isFalse();
+    }
+
+    @Test
+    void dispatch_usesClassificationRecordedAtDownloadInsteadOfReadingFile() throws IOException {
+        PendingClassifications classifications = new PendingClassifications();
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository, classifications), agentProcess, Runnable::run);
+
+        String filename = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        Files.writeString(config.pendingDir().resolve(filename), """
+                {"action": "opened", "issue": {"number": 1}}
+                """);
+        classifications.record(filename, new WebhookClassification("push", false, Optional.empty(), Priority.NORMAL));
+
+        dispatcher.dispatch();
+
+        assertThat(Files.exists(config.skippedDir().resolve(filename))).isTrue();
+        assertThat(classifications.get(filename)).isEmpty();
+    }
+
+    @Test
+    void dispatch_forgetsClassificationOnceTaskLeavesPending() throws IOException {
+        PendingClassifications classifications = new PendingClassifications();
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository, classifications), agentProcess, Runnable::run);
+
+        String filename = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        Files.writeString(config.pendingDir().resolve(filename), """
+                {"action": "opened", "issue": {"number": 1}}
+                """);
+
+        dispatcher.dispatch();
+
+        assertThat(Files.exists(config.completedDir().resolve(filename))).isTrue();
+        assertThat(classifications.get(filename)).isEmpty();
+    }
+
+    @Test
+    void dispatch_completesTaskStoredInJournal() throws IOException {
+        String filename = "2026-01-29T12:00:00.000Z_repo-a_abc12345.json";
+        try (JournalTaskRepository journal = JournalTaskRepository.create(config)) {
+            journal.createPendingTask(filename, """
+                    {"action": "opened", "issue": {"number": 1}}
+                    """);
+            dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, journal), agentProcess, Runnable::run);
+
+            dispatcher.dispatch();
+
+            assertThat(journal.listPending()).isEmpty();
+            assertThat(journal.read(filename, config.completedDir())).contains("opened");
+        }
+    }
+
+    @Test
+    void dispatch_usesAdaptiveTimeoutOfRepositoryWithEnoughHistory() throws IOException {
+        var executions = agentProcess.trackOutput();
+        for (int i = 1; i <= 20; i++) {
+            agentProcess.metrics().record(new RunMetrics("repo-a", Instant.now(), i * 1000L, RunMetrics.UNKNOWN,
+                    RunMetrics.UNKNOWN, 0, 0, RunMetrics.Outcome.EXITED));
+        }
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.create(agentProcess.metrics(), 3.0, Duration.ofSeconds(1), Duration.ofHours(1));
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), agentProcess,
+                Runnable::run, 2, timeouts);
+
+        String issuesOpenedContent = """
+                {"action": "opened", "issue": {"number": 1}}
+                """;
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_repo-a_abc12345.json"), issuesOpenedContent);
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:01.000Z_repo-b_def67890.json"), issuesOpenedContent);
+
+        dispatcher.dispatch();
+
+        assertThat(executions.data()).hasSize(2);
+        for (AgentProcess.ExecuteRecord execution : executions.data()) {
+            Duration expected = execution.repoName().equals("repo-a") ? Duration.ofSeconds(60) : AgentProcess.DEFAULT_TIMEOUT;
+            assertThat(execution.timeout()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void dispatch_neverRunsMoreAgentsThanTheConcurrencyLimit() throws IOException {
+        List<Runnable> submitted = new ArrayList<>();
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), agentProcess, submitted::add, 2);
+
+        String issuesOpenedContent = """
+                {"action": "opened", "issue": {"number": 1}}
+                """;
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_repo-a_abc12345.json"), issuesOpenedContent);
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:01.000Z_repo-b_def67890.json"), issuesOpenedContent);
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:02.000Z_repo-c_0a1b2c3d.json"), issuesOpenedContent);
+
+        dispatcher.dispatch();
+
+        assertThat(submitted).hasSize(2);
+        assertThat(repository.listPending()).hasSize(1);
+    }
+
+    @Test
+    void finishedTask_startsQueuedTaskWithoutWaitingForNextDispatch() throws IOException {
+        List<Runnable> submitted = new ArrayList<>();
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), agentProcess, submitted::add, 1);
+
+        String issuesOpenedContent = """
+                {"action": "opened", "issue": {"number": 1}}
+                """;
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_repo-a_abc12345.json"), issuesOpenedContent);
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:01.000Z_repo-b_def67890.json"), issuesOpenedContent);
+        dispatcher.dispatch();
+
+        submitted.getFirst().run();
+
+        assertThat(submitted).hasSize(2);
+        assertThat(repository.listPending()).isEmpty();
+    }
+
+    @Test
+    void finishedTask_startsNextTaskForTheSameRepo() throws IOException {
+        List<Runnable> submitted = new ArrayList<>();
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), agentProcess, submitted::add);
+
+        String issuesOpenedContent = """
+                {"action": "opened", "issue": {"number": 1}}
+                """;
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_same-repo_abc12345.json"), issuesOpenedContent);
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:01.000Z_same-repo_def67890.json"), issuesOpenedContent);
+        dispatcher.dispatch();
+        assertThat(submitted).hasSize(1);
+
+        submitted.getFirst().run();
+
+        assertThat(submitted).hasSize(2);
+        assertThat(repository.listPending()).isEmpty();
+    }
+
+    @Test
+    void constructor_rejectsConcurrencyLimitBelowOne() {
+        assertThatThrownBy(() -> new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), agentProcess, Runnable::run, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void dispatch_startsKeyRepoIssueFirstWhenSlotsAreScarce() throws IOException {
+        List<Runnable> submitted = new ArrayList<>();
+        PendingClassifications classifications = new PendingClassifications(new PriorityPolicy(Set.of("owner/key-repo"), Set.of()));
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository, classifications), agentProcess, submitted::add, 1);
+
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_owner-busy-repo_abc12345.json"), """
+                {"action": "opened", "issue": {"number": 1}, "repository": {"full_name": "owner/busy-repo"}}
+                """);
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:05.000Z_owner-key-repo_def67890.json"), """
+                {"action": "opened", "issue": {"number": 2}, "repository": {"full_name": "owner/key-repo"}}
+                """);
+
+        dispatcher.dispatch();
+
+        assertThat(repository.listPending()).containsExactly("2026-01-29T12:00:00.000Z_owner-busy-repo_abc12345.json");
+    }
+
+    @Test
+    void dispatch_coalescesBurstForSameIssueIntoOneRun() throws IOException {
+        var output = agentProcess.trackOutput();
+        dispatcher = new Dispatcher(config.outputsDir(),
+                new FileBasedAgentTasks(config, repository, new PendingClassifications(), Duration.ofSeconds(10)),
+                agentProcess, Runnable::run);
+
+        String first = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        String second = "2026-01-29T12:00:03.000Z_my-repo_def67890.json";
+        String muchLater = "2026-01-29T12:05:00.000Z_my-repo_0a1b2c3d.json";
+        Files.writeString(config.pendingDir().resolve(first), "{\"action\": \"opened\", \"issue\": {\"number\": 7, \"title\": \"first\"}}");
+        Files.writeString(config.pendingDir().resolve(second), "{\"action\": \"opened\", \"issue\": {\"number\": 7, \"title\": \"second\"}}");
+        Files.writeString(config.pendingDir().resolve(muchLater), "{\"action\": \"opened\", \"issue\": {\"number\": 7, \"title\": \"later\"}}");
+
+        dispatcher.dispatch();
+
+        assertThat(output.data()).hasSize(2);
+        assertThat(output.data().getFirst().webhookContent())
+                .startsWith("[")
+                .contains("\"first\"", "\"second\"");
+        assertThat(Files.exists(config.completedDir().resolve(first))).isTrue();
+        assertThat(Files.exists(config.completedDir().resolve(second))).isTrue();
+        assertThat(Files.exists(config.completedDir().resolve(muchLater))).isTrue();
+    }
+
+    @Test
+    void dispatch_afterRestartBetweenCoalesceAndRun_stillRunsWholeBurst() throws IOException {
+        var output = agentProcess.trackOutput();
+        String first = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        String second = "2026-01-29T12:00:03.000Z_my-repo_def67890.json";
+        Files.writeString(config.pendingDir().resolve(first), "{\"action\": \"opened\", \"issue\": {\"number\": 7, \"title\": \"first\"}}");
+        Files.writeString(config.pendingDir().resolve(second), "{\"action\": \"opened\", \"issue\": {\"number\": 7, \"title\": \"second\"}}");
+        new FileBasedAgentTasks(config, repository, new PendingClassifications(), Duration.ofSeconds(10)).sweepPending();
+
+        TaskRepository restarted = FileSystemTaskRepository.create(config);
+        dispatcher = new Dispatcher(config.outputsDir(),
+                new FileBasedAgentTasks(config, restarted, new PendingClassifications(), Duration.ofSeconds(10)),
+                agentProcess, Runnable::run);
+        dispatcher.dispatch();
+
+        assertThat(output.data()).hasSize(1);
+        assertThat(output.data().getFirst().webhookContent()).contains("\"first\"", "\"second\"");
+        assertThat(Files.exists(config.completedDir().resolve(first))).isTrue();
+        assertThat(Files.exists(config.completedDir().resolve(second))).isTrue();
+    }
+
+    @Test
+    void dispatch_afterRestartDuringCoalescedRun_recoversWholeBurst() throws IOException {
+        String first = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        String second = "2026-01-29T12:00:03.000Z_my-repo_def67890.json";
+        Files.writeString(config.pendingDir().resolve(first), "{\"action\": \"opened\", \"issue\": {\"number\": 7}}");
+        Files.writeString(config.pendingDir().resolve(second), "{\"action\": \"opened\", \"issue\": {\"number\": 7}}");
+        FileBasedAgentTasks interrupted = new FileBasedAgentTasks(config, repository, new PendingClassifications(), Duration.ofSeconds(10));
+        for (var task : interrupted.sweepPending()) {
+            interrupted.startProcessing(task);
+        }
+        assertThat(repository.listProcessing()).containsExactlyInAnyOrder(first, second);
+
+        var output = agentProcess.trackOutput();
+        dispatcher = new Dispatcher(config.outputsDir(),
+                new FileBasedAgentTasks(config, FileSystemTaskRepository.create(config), new PendingClassifications(), Duration.ofSeconds(10)),
+                agentProcess, Runnable::run);
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+
+        assertThat(output.data()).hasSize(1);
+        assertThat(Files.exists(config.completedDir().resolve(first))).isTrue();
+        assertThat(Files.exists(config.completedDir().resolve(second))).isTrue();
+    }
+
+    @Test
+    void dispatch_coalescesFollowUpEventsIntoOpenedRun() throws IOException {
+        var output = agentProcess.trackOutput();
+        dispatcher = new Dispatcher(config.outputsDir(),
+                new FileBasedAgentTasks(config, repository, new PendingClassifications(), Duration.ofSeconds(10)),
+                agentProcess, Runnable::run);
+
+        String opened = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        String labeled = "2026-01-29T12:00:02.000Z_my-repo_def67890.json";
+        String lateEdit = "2026-01-29T12:05:00.000Z_my-repo_0a1b2c3d.json";
+        Files.writeString(config.pendingDir().resolve(opened), "{\"action\": \"opened\", \"issue\": {\"number\": 7}}");
+        Files.writeString(config.pendingDir().resolve(labeled), "{\"action\": \"labeled\", \"issue\": {\"number\": 7}}");
+        Files.writeString(config.pendingDir().resolve(lateEdit), "{\"action\": \"edited\", \"issue\": {\"number\": 7}}");
+
+        dispatcher.dispatch();
+
+        assertThat(output.data()).hasSize(1);
+        assertThat(output.data().getFirst().webhookContent()).contains("\"labeled\"");
+        assertThat(Files.exists(config.completedDir().resolve(labeled))).isTrue();
+        assertThat(Files.exists(config.skippedDir().resolve(lateEdit))).isTrue();
+    }
+
+    @Test
+    void dispatch_withoutCoalesceWindow_runsEveryWebhookSeparately() throws IOException {
+        var output = agentProcess.trackOutput();
+
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_my-repo_abc12345.json"),
+                "{\"action\": \"opened\", \"issue\": {\"number\": 7}}");
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:01.000Z_my-repo_def67890.json"),
+                "{\"action\": \"opened\", \"issue\": {\"number\": 7}}");
+
+        dispatcher.dispatch();
+
+        assertThat(output.data()).hasSize(2);
+        assertThat(Files.list(config.skippedDir())).isEmpty();
+    }
+
+    @Test
+    void dispatch_doesNotCoalesceDifferentIssues() throws IOException {
+        var output = agentProcess.trackOutput();
+        dispatcher = new Dispatcher(config.outputsDir(),
+                new FileBasedAgentTasks(config, repository, new PendingClassifications(), Duration.ofSeconds(10)),
+                agentProcess, Runnable::run);
+
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:00.000Z_my-repo_abc12345.json"),
+                "{\"action\": \"opened\", \"issue\": {\"number\": 7}}");
+        Files.writeString(config.pendingDir().resolve("2026-01-29T12:00:01.000Z_my-repo_def67890.json"),
+                "{\"action\": \"opened\", \"issue\": {\"number\": 8}}");
+
+        dispatcher.dispatch();
+
+        assertThat(output.data()).hasSize(2);
+        assertThat(output.data().get(0).webhookContent()).startsWith("{");
+        assertThat(output.data().get(1).webhookContent()).startsWith("{");
+    }
+
+    @Test
+    void shutdown_leavesInterruptedRunInProcessingForRecovery() throws IOException {
+        Files.createDirectories(config.repoBaseDir().resolve("my-repo"));
+        AgentProcess sleepingAgent = AgentProcess.create(config.repoBaseDir(), Duration.ofSeconds(10), List.of("sh", "-c", "sleep 30", "sh"));
+        dispatcher = new Dispatcher(config.outputsDir(), new FileBasedAgentTasks(config, repository), sleepingAgent, Runnable::run);
+        String filename = "2026-01-29T12:00:00.000Z_my-repo_abc12345.json";
+        Files.writeString(config.pendingDir().resolve(filename), """
+                {"action": "opened", "issue": {"number": 1}}
+                """);
+        dispatcher.dispatch();
+
+        dispatcher.shutdown(Duration.ofMillis(100));
+
+        assertThat(Files.exists(config.processingDir().resolve(filename))).isTrue();
+        assertThat(Files.exists(config.failedDir().resolve(filename))).isFalse();
+    }
+}
@@ -0,0 +1,61 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Minimal worker for pool tests: echoes each task back with its own pid, fails the payload "fail"
+ * with exit code 2 and never answers the payload "hang".
+ */
+public class EchoAgentWorker {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static List<String> command() {
+        return List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                EchoAgentWorker.class.getName());
+    }
+
+    public static void main(String[] args) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        while (true) {
+            ObjectNode message;
+            try {
+                message = WorkerProtocol.read(in);
+            } catch (EOFException e) {
+                return;
+            }
+            long id = message.path("id").asLong();
+            if ("ping".equals(message.path("type").asText())) {
+                reply(out, MAPPER.createObjectNode().put("type", "pong").put("id", id));
+                continue;
+            }
+            String payload = message.path("payload").asText();
+            if ("hang".equals(payload)) {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            reply(out, MAPPER.createObjectNode()
+                    .put("type", "result")
+                    .put("id", id)
+                    .put("exitCode", "fail".equals(payload) ? 2 : 0)
+                    .put("output", "pid=%d repo=%s payload=%s".formatted(
+                            ProcessHandle.current().pid(), message.path("repo").asText(), payload)));
+        }
+    }
+
+    private static void reply(DataOutputStream out, ObjectNode message) throws IOException {
+        WorkerProtocol.write(out, message);
+    }
+}
@@ -0,0 +1,93 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputCaptureTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void drain_copiesOutputWithinTheLimitUnchanged() throws IOException {
+        Path file = tempDir.resolve("out/output.txt");
+        OutputCapture capture = OutputCapture.open(file, 100);
+
+        capture.drain(stream("hello\n"));
+
+        assertThat(Files.readString(file)).isEqualTo("hello\n");
+        assertThat(capture.totalBytes()).isEqualTo(6);
+    }
+
+    @Test
+    void drain_dropsOutputPastTheLimitBehindMarkers() throws IOException {
+        Path file = tempDir.resolve("output.txt");
+        OutputCapture capture = OutputCapture.open(file, 5);
+
+        capture.drain(stream("0123456789"));
+
+        assertThat(Files.readString(file)).isEqualTo("01234%n[output truncated: limit of 5 bytes reached]%n[5 bytes of output dropped]%n".formatted());
+        assertThat(capture.totalBytes()).isEqualTo(10);
+    }
+
+    @Test
+    void drain_whenWritingFails_keepsReadingToTheEnd() throws IOException {
+        // Every write to /dev/full fails with ENOSPC
+        OutputCapture capture = OutputCapture.open(Path.of("/dev/full"), 1024 * 1024);
+        InputStream in = stream("x".repeat(100_000) + "last line\n");
+
+        capture.drain(in);
+
+        assertThat(capture.failed()).isTrue();
+        assertThat(capture.totalBytes()).isEqualTo(100_010);
+        assertThat(capture.tail()).endsWith("last line\n");
+    }
+
+    @Test
+    void tail_keepsOutputDroppedByTheLimit() throws IOException {
+        OutputCapture capture = OutputCapture.open(tempDir.resolve("output.txt"), 5);
+
+        capture.drain(stream("0123456789"));
+
+        assertThat(capture.tail()).isEqualTo("0123456789");
+    }
+
+    @Test
+    void tail_returnsOnlyTheMostRecentBytes() throws IOException {
+        OutputCapture capture = OutputCapture.open(tempDir.resolve("output.txt"), Long.MAX_VALUE);
+        byte[] first = "a".repeat(OutputCapture.TAIL_BYTES - 3).getBytes(StandardCharsets.UTF_8);
+        byte[] second = "bcdefg".getBytes(StandardCharsets.UTF_8);
+
+        capture.write(first, first.length);
+        capture.write(second, second.length);
+        capture.close();
+
+        assertThat(capture.tail()).hasSize(OutputCapture.TAIL_BYTES).endsWith("aaabcdefg");
+    }
+
+    @Test
+    void store_compressesWhenConfigured() throws IOException {
+        Path file = tempDir.resolve("output.txt");
+
+        OutputCapture.store(file, "worker output", new OutputLimits(1024, true));
+
+        assertThat(Files.exists(file)).isFalse();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(tempDir.resolve("output.txt.gz")))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("worker output");
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputRetentionTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+
+    @TempDir
+    Path outputsDir;
+
+    @Test
+    void sweep_deletesFilesOlderThanTheMaximumAge() throws IOException {
+        Path old = outputFile("old.txt", 10, NOW.minus(Duration.ofDays(31)));
+        Path recent = outputFile("recent.txt", 10, NOW.minus(Duration.ofDays(1)));
+        OutputRetention retention = new OutputRetention(outputsDir, Duration.ofDays(30), 0, path -> false);
+
+        int deleted = retention.sweep(NOW);
+
+        assertThat(deleted).isEqualTo(1);
+        assertThat(Files.exists(old)).isFalse();
+        assertThat(Files.exists(recent)).isTrue();
+    }
+
+    @Test
+    void sweep_deletesOldestFilesWhileOverTheTotalSize() throws IOException {
+        Path oldest = outputFile("a.txt", 40, NOW.minusSeconds(300));
+        Path middle = outputFile("b.txt", 40, NOW.minusSeconds(200));
+        Path newest = outputFile("c.txt", 40, NOW.minusSeconds(100));
+        OutputRetention retention = new OutputRetention(outputsDir, Duration.ZERO, 100, path -> false);
+
+        retention.sweep(NOW);
+
+        assertThat(Files.exists(oldest)).isFalse();
+        assertThat(Files.exists(middle)).isTrue();
+        assertThat(Files.exists(newest)).isTrue();
+    }
+
+    @Test
+    void sweep_keepsFilesStillBeingWritten() throws IOException {
+        Path writing = outputFile("writing.txt", 10, NOW.minus(Duration.ofDays(31)));
+        OutputRetention retention = new OutputRetention(outputsDir, Duration.ofDays(30), 0, writing::equals);
+
+        int deleted = retention.sweep(NOW);
+
+        assertThat(deleted).isZero();
+        assertThat(Files.exists(writing)).isTrue();
+    }
+
+    @Test
+    void sweep_doesNothingWhenDisabled() throws IOException {
+        Path old = outputFile("old.txt", 10, NOW.minus(Duration.ofDays(365)));
+        OutputRetention retention = new OutputRetention(outputsDir, Duration.ZERO, 0, path -> false);
+
+        assertThat(retention.isEnabled()).isFalse();
+        assertThat(retention.sweep(NOW)).isZero();
+        assertThat(Files.exists(old)).isTrue();
+    }
+
+    private Path outputFile(String name, int size, Instant modified) throws IOException {
+        Path file = outputsDir.resolve(name);
+        Files.write(file, new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+        return file;
+    }
+}
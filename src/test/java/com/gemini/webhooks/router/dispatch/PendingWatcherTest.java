@@ -0,0 +1,76 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PendingWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void start_notifiesWhenFileIsCreated() throws IOException, InterruptedException {
+        CountDownLatch changed = new CountDownLatch(1);
+
+        try (PendingWatcher ignored = PendingWatcher.start(tempDir, changed::countDown)) {
+            Files.writeString(tempDir.resolve("webhook.json"), "{}");
+
+            assertThat(changed.await(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void start_reportsTheNamesOfCreatedFiles() throws IOException, InterruptedException {
+        BlockingQueue<Set<String>> created = new LinkedBlockingQueue<>();
+
+        try (PendingWatcher ignored = PendingWatcher.start(tempDir, created::add)) {
+            Files.writeString(tempDir.resolve("webhook.json"), "{}");
+
+            assertThat(created.poll(10, TimeUnit.SECONDS)).contains("webhook.json");
+        }
+    }
+
+    @Test
+    void start_steadyStreamOfFiles_stillNotifiesWithinTheMaximumDelay() throws IOException, InterruptedException {
+        BlockingQueue<Set<String>> created = new LinkedBlockingQueue<>();
+
+        try (PendingWatcher ignored = PendingWatcher.start(tempDir, created::add)) {
+            long start = System.nanoTime();
+            // One file every 50 ms never leaves the 100 ms debounce window quiet
+            for (int i = 0; Duration.ofNanos(System.nanoTime() - start).toMillis() < 4 * PendingWatcher.MAX_DELAY_MILLIS
+                    && created.isEmpty(); i++) {
+                Files.writeString(tempDir.resolve("webhook-" + i + ".json"), "{}");
+                Thread.sleep(50);
+            }
+
+            assertThat(created).isNotEmpty();
+            assertThat(created.peek()).contains("webhook-0.json");
+        }
+    }
+
+    @Test
+    void start_notifiesWhenFileIsMovedIn() throws IOException, InterruptedException {
+        Path processing = Files.createDirectory(tempDir.resolve("processing"));
+        Path pending = Files.createDirectory(tempDir.resolve("pending"));
+        Files.writeString(processing.resolve("webhook.json"), "{}");
+        CountDownLatch changed = new CountDownLatch(1);
+
+        try (PendingWatcher ignored = PendingWatcher.start(pending, changed::countDown)) {
+            Files.move(processing.resolve("webhook.json"), pending.resolve("webhook.json"));
+
+            assertThat(changed.await(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.gemini.webhooks.router.dispatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunStatsFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void append_writesOneJsonLinePerRunToTheRepositoryFile() throws IOException {
+        RunStatsFiles files = new RunStatsFiles(tempDir.resolve("stats"));
+        Instant started = Instant.parse("2026-03-01T12:00:00Z");
+
+        files.append(new RunMetrics("my-repo", started, 1500, 700, 4096, 12, 0, RunMetrics.Outcome.EXITED));
+        files.append(new RunMetrics("my-repo", started, 300000, 900, 8192, 40, 143, RunMetrics.Outcome.TIMED_OUT));
+
+        assertThat(Files.readAllLines(tempDir.resolve("stats/my-repo.jsonl"))).containsExactly(
+                "{\"startedAt\":\"2026-03-01T12:00:00Z\",\"outcome\":\"EXITED\",\"exitCode\":0,\"wallMillis\":1500,"
+                        + "\"cpuMillis\":700,\"peakRssBytes\":4096,\"outputBytes\":12}",
+                "{\"startedAt\":\"2026-03-01T12:00:00Z\",\"outcome\":\"TIMED_OUT\",\"exitCode\":143,\"wallMillis\":300000,"
+                        + "\"cpuMillis\":900,\"peakRssBytes\":8192,\"outputBytes\":40}");
+    }
+
+    @Test
+    void restoreInto_readsBackAppendedRunsAndSkipsUnreadableLines() throws IOException {
+        Path statsDir = tempDir.resolve("stats");
+        RunStatsFiles files = new RunStatsFiles(statsDir);
+        Instant started = Instant.parse("2026-03-01T12:00:00Z");
+        files.append(new RunMetrics("my-repo", started, 1500, 700, 4096, 12, 0, RunMetrics.Outcome.EXITED));
+        files.append(new RunMetrics("other-repo", started, 2500, 700, 4096, 12, 1, RunMetrics.Outcome.EXITED));
+        Files.writeString(statsDir.resolve("my-repo.jsonl"), "{\"startedAt\":\"2026-03-01T1", StandardOpenOption.APPEND);
+        AgentMetrics metrics = new AgentMetrics();
+
+        int restored = files.restoreInto(metrics);
+
+        assertThat(restored).isEqualTo(2);
+        assertThat(metrics.stats("my-repo").orElseThrow().recentSuccessWallMillis()).containsExactly(1500L);
+        assertThat(metrics.stats("other-repo").orElseThrow().failures()).isEqualTo(1);
+    }
+
+    @Test
+    void append_trimsTheFileToTheRetainedRunsOnceItHoldsTwiceAsMany() throws IOException {
+        Path statsDir = tempDir.resolve("stats");
+        RunStatsFiles files = new RunStatsFiles(statsDir);
+        Instant started = Instant.parse("2026-03-01T12:00:00Z");
+
+        for (int i = 0; i <= 2 * RunStatsFiles.RETAINED_RUNS; i++) {
+            files.append(new RunMetrics("my-repo", started, i, 700, 4096, 12, 0, RunMetrics.Outcome.EXITED));
+        }
+
+        List<String> lines = Files.readAllLines(statsDir.resolve("my-repo.jsonl"));
+        assertThat(lines).hasSize(RunStatsFiles.RETAINED_RUNS);
+        assertThat(lines.getLast()).contains("\"wallMillis\":" + 2 * RunStatsFiles.RETAINED_RUNS);
+    }
+
+    @Test
+    void restoreInto_readsOnlyTheRetainedRunsOfALongerFile() throws IOException {
+        Path statsDir = Files.createDirectories(tempDir.resolve("stats"));
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < RunStatsFiles.RETAINED_RUNS + 10; i++) {
+            lines.append("{\"startedAt\":\"2026-03-01T12:00:00Z\",\"outcome\":\"TIMED_OUT\",\"wallMillis\":1}\n");
+        }
+        Files.writeString(statsDir.resolve("my-repo.jsonl"), lines);
+        AgentMetrics metrics = new AgentMetrics();
+
+        int restored = new RunStatsFiles(statsDir).restoreInto(metrics);
+
+        assertThat(restored).isEqualTo(RunStatsFiles.RETAINED_RUNS);
+        assertThat(metrics.stats("my-repo").orElseThrow().timeouts()).isEqualTo(RunStatsFiles.RETAINED_RUNS);
+    }
+
+    @Test
+    void restoreInto_restoresNothingWithoutStatsDirectory() {
+        assertThat(new RunStatsFiles(tempDir.resolve("missing")).restoreInto(new AgentMetrics())).isZero();
+    }
+}
@@ -0,0 +1,68 @@
+package com.gemini.webhooks.router.dispatch;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WorkerProtocolTest {
+
+    @Test
+    void write_prefixesJsonWithItsLength() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        WorkerProtocol.write(new DataOutputStream(bytes), WorkerProtocol.ping(7));
+
+        byte[] frame = bytes.toByteArray();
+        assertThat(ByteBuffer.wrap(frame).getInt()).isEqualTo(frame.length - 4);
+    }
+
+    @Test
+    void read_returnsMessageWritten() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WorkerProtocol.write(new DataOutputStream(bytes), WorkerProtocol.task(3, "my-repo", Path.of("/repos/my-repo"), "{\"a\":1}"));
+
+        ObjectNode message = WorkerProtocol.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(message.path("type").asText()).isEqualTo("task");
+        assertThat(message.path("id").asLong()).isEqualTo(3);
+        assertThat(message.path("payload").asText()).isEqualTo("{\"a\":1}");
+    }
+
+    @Test
+    void read_atEndOfStream_throwsEof() {
+        DataInputStream empty = new DataInputStream(new ByteArrayInputStream(new byte[0]));
+
+        assertThatThrownBy(() -> WorkerProtocol.read(empty)).isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void read_rejectsOversizedFrame() {
+        byte[] header = ByteBuffer.allocate(4).putInt(WorkerProtocol.MAX_FRAME_BYTES + 1).array();
+
+        assertThatThrownBy(() -> WorkerProtocol.read(new DataInputStream(new ByteArrayInputStream(header))))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void awaitReply_skipsUnrelatedFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        WorkerProtocol.write(out, WorkerProtocol.ping(1));
+        WorkerProtocol.write(out, WorkerProtocol.ping(2).put("type", "pong"));
+
+        ObjectNode reply = WorkerProtocol.awaitReply(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 2, "pong");
+
+        assertThat(reply.path("id").asLong()).isEqualTo(2);
+    }
+}
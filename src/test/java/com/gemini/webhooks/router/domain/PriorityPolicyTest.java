@@ -0,0 +1,60 @@
+package com.gemini.webhooks.router.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriorityPolicyTest {
+
+    private final PriorityPolicy policy = new PriorityPolicy(Set.of("owner/key-repo"), Set.of("Urgent"));
+
+    @Test
+    void priorityOf_urgentIssueInKeyRepo_isUrgent() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1, "labels": [{"name": "urgent"}]},
+                 "repository": {"full_name": "owner/key-repo"}}
+                """);
+
+        assertThat(policy.priorityOf(payload)).isEqualTo(Priority.URGENT);
+    }
+
+    @Test
+    void priorityOf_urgentIssueElsewhere_isHigh() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1, "labels": [{"name": "URGENT"}]},
+                 "repository": {"full_name": "owner/other-repo"}}
+                """);
+
+        assertThat(policy.priorityOf(payload)).isEqualTo(Priority.HIGH);
+    }
+
+    @Test
+    void priorityOf_plainIssueInKeyRepo_isHigh() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1}, "repository": {"full_name": "owner/key-repo"}}
+                """);
+
+        assertThat(policy.priorityOf(payload)).isEqualTo(Priority.HIGH);
+    }
+
+    @Test
+    void priorityOf_plainIssueElsewhere_isNormal() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1}, "repository": {"full_name": "owner/other-repo"}}
+                """);
+
+        assertThat(policy.priorityOf(payload)).isEqualTo(Priority.NORMAL);
+    }
+
+    @Test
+    void priorityOf_eventThatIsNeverDispatched_isNormal() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "closed", "issue": {"number": 1, "labels": [{"name": "urgent"}]},
+                 "repository": {"full_name": "owner/key-repo"}}
+                """);
+
+        assertThat(policy.priorityOf(payload)).isEqualTo(Priority.NORMAL);
+    }
+}
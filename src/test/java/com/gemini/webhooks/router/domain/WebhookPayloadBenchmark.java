@@ -0,0 +1,122 @@
+package com.gemini.webhooks.router.domain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link RoutingFields} extractor with the previous {@code readTree} approach.
+ * Run with:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.gemini.webhooks.router.domain.WebhookPayloadBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookPayloadBenchmark {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Param({"issues", "push"})
+    public String kind;
+
+    private String json;
+
+    @Setup
+    public void setUp() {
+        json = "issues".equals(kind) ? issuesPayload() : pushPayload();
+    }
+
+    @Benchmark
+    public RoutingFields streaming() throws IOException {
+        return RoutingFields.extract(json);
+    }
+
+    @Benchmark
+    public RoutingFields readTree() throws IOException {
+        JsonNode root = objectMapper.readTree(json);
+        Optional<Integer> issueNumber = Optional.empty();
+        if (root.has("issue") && root.get("issue").has("number")) {
+            issueNumber = Optional.of(root.get("issue").get("number").asInt());
+        } else if (root.has("pull_request") && root.get("pull_request").has("number")) {
+            issueNumber = Optional.of(root.get("pull_request").get("number").asInt());
+        }
+        String action = root.has("action") ? root.get("action").asText() : null;
+        String eventType = "unknown";
+        if (root.has("issue") && action != null) {
+            eventType = "issues." + action;
+        } else if (root.has("pull_request") && action != null) {
+            eventType = "pull_request." + action;
+        } else if (root.has("ref") && root.has("commits")) {
+            eventType = "push";
+        }
+        JsonNode fullName = root.path("repository").path("full_name");
+        Optional<String> repoFullName = fullName.isMissingNode() || fullName.isNull()
+                ? Optional.empty()
+                : Optional.of(fullName.asText());
+        return new RoutingFields(issueNumber, eventType, repoFullName, List.of());
+    }
+
+    // ~100 KB issues.opened payload with a long body, in GitHub's field order
+    private static String issuesPayload() {
+        return """
+                {"action":"opened","issue":{"number":42,"title":"Crash on startup","body":"%s",\
+                "labels":[{"name":"bug"}],"user":%s},"repository":{"full_name":"owner/repo",\
+                "owner":%s},"sender":%s}
+                """.formatted("x".repeat(100_000), user(), user(), user()).strip();
+    }
+
+    // ~100 KB push payload: the commits array dominates and repository comes after it
+    private static String pushPayload() {
+        StringBuilder commits = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                commits.append(',');
+            }
+            commits.append("""
+                    {"id":"%040d","message":"%s","author":%s,"added":["src/a.java"],"modified":["src/b.java"]}
+                    """.formatted(i, "m".repeat(300), user()).strip());
+        }
+        return """
+                {"ref":"refs/heads/main","before":"%s","after":"%s","commits":[%s],\
+                "repository":{"full_name":"owner/repo","owner":%s},"sender":%s}
+                """.formatted("0".repeat(40), "f".repeat(40), commits, user(), user()).strip();
+    }
+
+    private static String user() {
+        return """
+                {"login":"octocat","id":1,"avatar_url":"https://avatars.githubusercontent.com/u/1","type":"User"}
+                """.strip();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebhookPayloadBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
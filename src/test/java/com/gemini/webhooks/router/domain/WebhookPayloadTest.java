@@ -168,4 +168,77 @@ class WebhookPayloadTest {
 
         assertThat(payload.repoFullName()).isEmpty();
     }
+
+    @Test
+    void malformedJson_yieldsDefaultsForEveryField() {
+        WebhookPayload payload = new WebhookPayload("not-valid-json{{{");
+
+        assertThat(payload.issueNumber()).isEmpty();
+        assertThat(payload.eventType()).isEqualTo("unknown");
+        assertThat(payload.repoFullName()).isEmpty();
+        assertThat(payload.isDispatchable()).isFalse();
+    }
+
+    @Test
+    void accessors_returnSameValuesOnRepeatedCalls() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 7}, "repository": {"full_name": "owner/repo"}}
+                """);
+
+        assertThat(payload.eventType()).isEqualTo("issues.opened");
+        assertThat(payload.eventType()).isEqualTo("issues.opened");
+        assertThat(payload.issueNumber()).contains(7);
+        assertThat(payload.repoFullName()).contains("owner/repo");
+    }
+
+    @Test
+    void routingFields_ignoreLargeUnrelatedSubtrees() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"ref": "refs/heads/main",
+                 "commits": [{"id": "abc", "message": "number", "author": {"number": 5}}],
+                 "sender": {"login": "octocat", "repository": {"full_name": "wrong/repo"}},
+                 "repository": {"owner": {"full_name": "wrong/owner"}, "full_name": "owner/repo"}}
+                """);
+
+        assertThat(payload.eventType()).isEqualTo("push");
+        assertThat(payload.issueNumber()).isEmpty();
+        assertThat(payload.repoFullName()).contains("owner/repo");
+    }
+
+    @Test
+    void routingFields_stopReadingOnceIssueFieldsAreKnown() {
+        // Everything after the issue object is irrelevant for routing and is not parsed
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "repository": {"full_name": "owner/repo"},
+                 "issue": {"number": 3, "body": "long text"}, "sender": {"login": "trunc
+                """);
+
+        assertThat(payload.eventType()).isEqualTo("issues.opened");
+        assertThat(payload.issueNumber()).contains(3);
+        assertThat(payload.repoFullName()).contains("owner/repo");
+    }
+
+    @Test
+    void labels_returnsIssueLabelNames() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened",
+                 "issue": {"number": 1, "labels": [{"id": 1, "name": "bug"}, {"id": 2, "name": "urgent"}]}}
+                """);
+
+        assertThat(payload.labels()).containsExactly("bug", "urgent");
+    }
+
+    @Test
+    void labels_withoutLabels_returnsEmpty() {
+        WebhookPayload payload = new WebhookPayload("""
+                {"action": "opened", "issue": {"number": 1}}
+                """);
+
+        assertThat(payload.labels()).isEmpty();
+    }
+
+    @Test
+    void labels_withMalformedJson_returnsEmpty() {
+        assertThat(new WebhookPayload("{ not valid json }").labels()).isEmpty();
+    }
 }
@@ -1,10 +1,14 @@
 package com.gemini.webhooks.router.download;
 
 import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.Priority;
+import com.gemini.webhooks.router.domain.WebhookClassification;
+import com.gemini.webhooks.router.domain.WebhookFilename;
 import com.gemini.webhooks.router.domain.WebhookPayload;
 import com.gemini.webhooks.router.domain.WebhookRecord;
 import com.gemini.webhooks.router.storage.FileSystemTaskRepository;
 import com.gemini.webhooks.router.storage.TaskRepository;
+import com.gemini.webhooks.router.tasks.PendingClassifications;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -12,8 +16,13 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -128,6 +137,20 @@ class DownloaderTest {
         assertThat(deleteTracker.deletedIds()).containsExactly(DELIVERY_ID);
     }
 
+    // redelivery of a webhook that already ran: no new pending file, DynamoDB record still deleted
+    @Test
+    void download_whenWebhookAlreadyCompleted_doesNotRecreateAndStillDeletes() throws IOException {
+        Files.createDirectories(config.completedDir());
+        String completed = WebhookFilename.create(Instant.now().minusSeconds(60), "owner/my-repo", "72d3162e").toFilename();
+        Files.writeString(config.completedDir().resolve(completed), PAYLOAD);
+        Downloader downloader = downloaderWith(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))));
+
+        downloader.download();
+
+        assertThat(repository.listPending()).isEmpty();
+        assertThat(deleteTracker.deletedIds()).containsExactly(DELIVERY_ID);
+    }
+
     // 5.6 — missing repository field: no file written, no DynamoDB delete
     @Test
     void download_withMissingRepositoryField_writesNoFileAndDoesNotDelete() {
@@ -163,6 +186,76 @@ class DownloaderTest {
         assertThat(deleteTracker.deletedIds()).isEmpty();
     }
 
+    // records arriving over several scan pages are all written
+    @Test
+    void download_withSeveralPages_writesRecordsFromEveryPage() {
+        String secondDeliveryId = "9a8b7c6d-cc78-11e3-81ab-4c9367dc0958";
+        DynamoDbSource source = DynamoDbSource.createNullPaged(List.of(
+                List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))),
+                List.of(new WebhookRecord(secondDeliveryId, new WebhookPayload(PAYLOAD)))));
+        deleteTracker = source.trackDeletes();
+        Downloader downloader = new Downloader(source, repository);
+
+        downloader.download();
+
+        assertThat(repository.listPending()).hasSize(2);
+        assertThat(deleteTracker.deletedIds()).containsExactly(DELIVERY_ID, secondDeliveryId);
+    }
+
+    // deletes are grouped into BatchWriteItem-sized batches
+    @Test
+    void download_withManyRecords_deletesInBatchesOfAtMost25() {
+        List<WebhookRecord> records = IntStream.range(0, 30)
+                .mapToObj(i -> new WebhookRecord("%08x-cc78-11e3-81ab-4c9367dc0958".formatted(i), new WebhookPayload(PAYLOAD)))
+                .toList();
+        Downloader downloader = downloaderWith(records);
+
+        downloader.download();
+
+        assertThat(deleteTracker.batches()).hasSize(2);
+        assertThat(deleteTracker.batches().get(0)).hasSize(25);
+        assertThat(deleteTracker.batches().get(1)).hasSize(5);
+        assertThat(deleteTracker.deletedIds()).hasSize(30);
+    }
+
+    // listener is told about freshly written files so the dispatcher can start them at once
+    @Test
+    void download_notifiesListenerWithCreatedFilenames() {
+        List<List<String>> notifications = new ArrayList<>();
+        DynamoDbSource source = DynamoDbSource.createNull(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))));
+        Downloader downloader = new Downloader(source, repository, QuietHours.none(), notifications::add);
+
+        downloader.download();
+
+        assertThat(notifications).hasSize(1);
+        assertThat(notifications.getFirst()).containsExactlyElementsOf(repository.listPending());
+    }
+
+    @Test
+    void download_withOnlyDuplicates_doesNotNotifyListener() {
+        List<List<String>> notifications = new ArrayList<>();
+        downloaderWith(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD)))).download();
+        DynamoDbSource source = DynamoDbSource.createNull(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))));
+        Downloader downloader = new Downloader(source, repository, QuietHours.none(), notifications::add);
+
+        downloader.download();
+
+        assertThat(notifications).isEmpty();
+    }
+
+    @Test
+    void download_recordsClassificationOfCreatedFiles() {
+        PendingClassifications classifications = new PendingClassifications();
+        DynamoDbSource source = DynamoDbSource.createNull(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))));
+        Downloader downloader = new Downloader(source, repository, QuietHours.none(), classifications, NewTasksListener.NONE);
+
+        downloader.download();
+
+        String filename = repository.listPending().getFirst();
+        assertThat(classifications.get(filename))
+                .contains(new WebhookClassification("issues.opened", true, Optional.of(1), Priority.NORMAL));
+    }
+
     // Quiet hours active: DynamoDB not scanned, no files written
     @Test
     void download_whenQuietHoursActive_skipsPollingEntirely() {
@@ -190,4 +283,64 @@ class DownloaderTest {
         assertThat(repository.listPending()).hasSize(1);
         assertThat(deleteTracker.deletedIds()).containsExactly(DELIVERY_ID);
     }
+
+    @Test
+    void download_withGroupCommit_publishesPageBeforeDeletingRecords() {
+        repository = FileSystemTaskRepository.create(config, true);
+        Downloader downloader = downloaderWith(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))));
+
+        downloader.download();
+
+        assertThat(repository.listPending()).hasSize(1);
+        assertThat(deleteTracker.deletedIds()).containsExactly(DELIVERY_ID);
+    }
+
+    @Test
+    void download_whenCommitFails_keepsDynamoDbRecordsAndDoesNotNotify() {
+        TaskRepository stored = repository;
+        List<String> notified = new ArrayList<>();
+        repository = new TaskRepository() {
+            @Override
+            public Path createPendingTask(String filename, String content) throws IOException {
+                return stored.createPendingTask(filename, content);
+            }
+
+            @Override
+            public List<String> listPending() {
+                return stored.listPending();
+            }
+
+            @Override
+            public List<String> listProcessing() throws IOException {
+                return stored.listProcessing();
+            }
+
+            @Override
+            public Path move(String filename, Path fromDir, Path toDir) throws IOException {
+                return stored.move(filename, fromDir, toDir);
+            }
+
+            @Override
+            public String read(String filename, Path dir) throws IOException {
+                return stored.read(filename, dir);
+            }
+
+            @Override
+            public void commit(Collection<String> filenames) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public boolean containsUniqueId(String uniqueId) {
+                return stored.containsUniqueId(uniqueId);
+            }
+        };
+        DynamoDbSource source = DynamoDbSource.createNull(List.of(new WebhookRecord(DELIVERY_ID, new WebhookPayload(PAYLOAD))));
+        deleteTracker = source.trackDeletes();
+
+        new Downloader(source, repository, QuietHours.none(), notified::addAll).download();
+
+        assertThat(deleteTracker.deletedIds()).isEmpty();
+        assertThat(notified).isEmpty();
+    }
 }
@@ -1,9 +1,25 @@
 package com.gemini.webhooks.router.download;
 
+import com.gemini.webhooks.router.domain.WebhookRecord;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class DynamoDbSourceTest {
 
@@ -25,4 +41,151 @@ class DynamoDbSourceTest {
 
         assertThatNoException().isThrownBy(source::close);
     }
+
+    @Test
+    void forEachPage_followsLastEvaluatedKeyAcrossPages() {
+        PagedClient client = new PagedClient(3);
+        DynamoDbSource source = DynamoDbSource.create(client, "Table", 1);
+        List<List<WebhookRecord>> pages = new ArrayList<>();
+
+        source.forEachPage(pages::add);
+
+        assertThat(pages).hasSize(3);
+        assertThat(pages.stream().flatMap(List::stream).toList()).extracting("deliveryId")
+                .containsExactly("seg0-page0", "seg0-page1", "seg0-page2");
+        assertThat(client.requests).hasSize(3);
+        assertThat(client.requests.peek().segment()).isNull();
+    }
+
+    @Test
+    void forEachPage_withSegments_scansEverySegmentToTheEnd() {
+        PagedClient client = new PagedClient(2);
+        DynamoDbSource source = DynamoDbSource.create(client, "Table", 3);
+        Queue<WebhookRecord> records = new ConcurrentLinkedQueue<>();
+
+        source.forEachPage(records::addAll);
+
+        assertThat(records).extracting("deliveryId").containsExactlyInAnyOrder(
+                "seg0-page0", "seg0-page1",
+                "seg1-page0", "seg1-page1",
+                "seg2-page0", "seg2-page1");
+        assertThat(client.requests).hasSize(6);
+        assertThat(client.requests).extracting("totalSegments").containsOnly(3);
+    }
+
+    @Test
+    void forEachPage_onNullVariant_deliversConfiguredPagesInOrder() {
+        WebhookRecord first = new WebhookRecord("first", null);
+        WebhookRecord second = new WebhookRecord("second", null);
+        DynamoDbSource source = DynamoDbSource.createNullPaged(List.of(List.of(first), List.of(second)));
+        List<List<WebhookRecord>> pages = new ArrayList<>();
+
+        source.forEachPage(pages::add);
+
+        assertThat(pages).containsExactly(List.of(first), List.of(second));
+    }
+
+    @Test
+    void deleteAll_retriesUnprocessedItemsUntilAllAreDeleted() {
+        BatchClient client = new BatchClient(2);
+        DynamoDbSource source = DynamoDbSource.create(client, "Table", 1);
+
+        source.deleteAll(List.of("a", "b", "c"));
+
+        assertThat(client.requestSizes).containsExactly(3, 2, 1);
+    }
+
+    @Test
+    void deleteAll_splitsKeysIntoBatchesOfAtMost25() {
+        BatchClient client = new BatchClient(0);
+        DynamoDbSource source = DynamoDbSource.create(client, "Table", 1);
+        DynamoDbSource.DeleteTracker tracker = source.trackDeletes();
+        List<String> ids = IntStream.range(0, 60).mapToObj(String::valueOf).toList();
+
+        source.deleteAll(ids);
+
+        assertThat(client.requestSizes).containsExactly(25, 25, 10);
+        assertThat(tracker.deletedIds()).isEqualTo(ids);
+    }
+
+    @Test
+    void deleteAll_onNullVariant_recordsBatchesWithoutCallingDynamoDb() {
+        DynamoDbSource source = DynamoDbSource.createNull();
+        DynamoDbSource.DeleteTracker tracker = source.trackDeletes();
+
+        source.deleteAll(List.of("a", "b"));
+
+        assertThat(tracker.batches()).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void create_rejectsNonPositiveSegmentCount() {
+        assertThatThrownBy(() -> DynamoDbSource.create(new PagedClient(1), "Table", 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // Leaves the last write request of each call unprocessed for the first `unprocessedRounds` calls
+    private static class BatchClient implements DynamoDbClient {
+        private final List<Integer> requestSizes = new ArrayList<>();
+        private int unprocessedRounds;
+
+        BatchClient(int unprocessedRounds) {
+            this.unprocessedRounds = unprocessedRounds;
+        }
+
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            List<WriteRequest> writes = request.requestItems().get("Table");
+            requestSizes.add(writes.size());
+            if (unprocessedRounds-- <= 0) {
+                return BatchWriteItemResponse.builder().build();
+            }
+            return BatchWriteItemResponse.builder()
+                    .unprocessedItems(Map.of("Table", writes.subList(1, writes.size())))
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Serves `pages` single-item pages per segment, chaining them with LastEvaluatedKey
+    private static class PagedClient implements DynamoDbClient {
+        private final int pages;
+        private final Queue<ScanRequest> requests = new ConcurrentLinkedQueue<>();
+
+        PagedClient(int pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public ScanResponse scan(ScanRequest request) {
+            requests.add(request);
+            int segment = request.segment() == null ? 0 : request.segment();
+            int page = request.exclusiveStartKey() == null || request.exclusiveStartKey().isEmpty()
+                    ? 0
+                    : Integer.parseInt(request.exclusiveStartKey().get("page").s()) + 1;
+            ScanResponse.Builder response = ScanResponse.builder()
+                    .items(List.of(Map.of("deliveryId", AttributeValue.fromS("seg%d-page%d".formatted(segment, page)))));
+            if (page + 1 < pages) {
+                response.lastEvaluatedKey(Map.of("page", AttributeValue.fromS(String.valueOf(page))));
+            }
+            return response.build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
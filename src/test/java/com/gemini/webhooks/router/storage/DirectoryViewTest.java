@@ -0,0 +1,96 @@
+package com.gemini.webhooks.router.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectoryViewTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void list_readsDirectoryOnFirstCall() throws IOException {
+        Files.writeString(tempDir.resolve("a.json"), "{}");
+        Files.createDirectories(tempDir.resolve("subdir"));
+
+        assertThat(view(Duration.ofMinutes(1)).list()).containsExactly("a.json");
+    }
+
+    @Test
+    void list_withinReconcileInterval_servesFromMemory() throws IOException {
+        DirectoryView view = view(Duration.ofMinutes(1));
+        view.list();
+        Files.writeString(tempDir.resolve("external.json"), "{}");
+
+        assertThat(view.list()).isEmpty();
+    }
+
+    @Test
+    void list_afterReconcileInterval_readsDirectoryAgain() throws IOException {
+        DirectoryView view = view(Duration.ofMinutes(1));
+        view.list();
+        Files.writeString(tempDir.resolve("external.json"), "{}");
+        nanos.addAndGet(Duration.ofMinutes(1).toNanos());
+
+        assertThat(view.list()).containsExactly("external.json");
+    }
+
+    @Test
+    void list_afterInvalidate_readsDirectoryAgain() throws IOException {
+        DirectoryView view = view(Duration.ofMinutes(1));
+        view.list();
+        Files.writeString(tempDir.resolve("external.json"), "{}");
+
+        view.invalidate();
+
+        assertThat(view.list()).containsExactly("external.json");
+    }
+
+    @Test
+    void list_reflectsReportedChangesWithoutReadingDirectory() {
+        DirectoryView view = view(Duration.ofMinutes(1));
+        view.list();
+
+        view.added("a.json");
+        view.added("b.json");
+        view.removed("a.json");
+
+        assertThat(view.list()).containsExactly("b.json");
+    }
+
+    @Test
+    void addedExternally_addsFilesStillInTheDirectoryWithoutReadingIt() throws IOException {
+        DirectoryView view = view(Duration.ofMinutes(1));
+        view.list();
+        Files.writeString(tempDir.resolve("external.json"), "{}");
+        Files.writeString(tempDir.resolve("unreported.json"), "{}");
+
+        view.addedExternally("external.json");
+        view.addedExternally("already-gone.json");
+
+        assertThat(view.list()).containsExactly("external.json");
+    }
+
+    @Test
+    void list_withZeroInterval_readsDirectoryOnEveryCall() throws IOException {
+        DirectoryView view = view(Duration.ZERO);
+        view.list();
+        Files.writeString(tempDir.resolve("external.json"), "{}");
+
+        assertThat(view.list()).containsExactly("external.json");
+    }
+
+    private DirectoryView view(Duration reconcileInterval) {
+        return new DirectoryView(tempDir, reconcileInterval, nanos::get);
+    }
+}
@@ -0,0 +1,228 @@
+package com.gemini.webhooks.router.storage;
+
+import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JournalTaskRepositoryTest {
+
+    private static final String FILENAME = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void createPendingTask_listsAndReadsTaskWithoutWritingToPending() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(FILENAME, "{\"action\":\"opened\"}");
+
+            assertThat(repository.listPending()).containsExactly(FILENAME);
+            assertThat(repository.read(FILENAME, config.pendingDir())).isEqualTo("{\"action\":\"opened\"}");
+            assertThat(Files.exists(config.pendingDir().resolve(FILENAME))).isFalse();
+        }
+    }
+
+    @Test
+    void move_changesStateOfTask() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(FILENAME, "{}");
+
+            Path moved = repository.move(FILENAME, config.pendingDir(), config.processingDir());
+
+            assertThat(moved).isEqualTo(config.processingDir().toAbsolutePath().resolve(FILENAME));
+            assertThat(repository.listPending()).isEmpty();
+            assertThat(repository.listProcessing()).containsExactly(FILENAME);
+            assertThat(repository.read(FILENAME, config.processingDir())).isEqualTo("{}");
+        }
+    }
+
+    @Test
+    void move_throwsNoSuchFileExceptionWhenTaskIsNotInSourceState() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(FILENAME, "{}");
+
+            assertThatThrownBy(() -> repository.move(FILENAME, config.processingDir(), config.completedDir()))
+                    .isInstanceOf(NoSuchFileException.class);
+            assertThatThrownBy(() -> repository.read("unknown.json", config.pendingDir()))
+                    .isInstanceOf(NoSuchFileException.class);
+        }
+    }
+
+    @Test
+    void create_replaysJournalWrittenBeforeRestart() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(FILENAME, "first");
+            repository.createPendingTask("2026-01-24T12:00:01.000Z_my-project_def67890.json", "second");
+            repository.move(FILENAME, config.pendingDir(), config.processingDir());
+        }
+
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.listPending()).containsExactly("2026-01-24T12:00:01.000Z_my-project_def67890.json");
+            assertThat(reopened.listProcessing()).containsExactly(FILENAME);
+            assertThat(reopened.read(FILENAME, config.processingDir())).isEqualTo("first");
+            assertThat(reopened.containsUniqueId("abc12345")).isTrue();
+        }
+    }
+
+    @Test
+    void create_truncatesTornRecordAtEndOfJournal() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(FILENAME, "{}");
+        }
+        Path journal = config.storageRoot().resolve("journal").resolve(JournalTaskRepository.JOURNAL_FILE);
+        long intactSize = Files.size(journal);
+        Files.writeString(journal, "0badc0de {\"op\":\"move\",\"file\":\"" + FILENAME, StandardOpenOption.APPEND);
+
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.listPending()).containsExactly(FILENAME);
+            assertThat(Files.size(journal)).isEqualTo(intactSize);
+
+            reopened.move(FILENAME, config.pendingDir(), config.processingDir());
+        }
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.listProcessing()).containsExactly(FILENAME);
+        }
+    }
+
+    @Test
+    void compact_archivesFinishedTasksAndKeepsTheRest() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        // Received recently, so its uniqueId still counts once it is archived
+        String done = WebhookFilename.create(Instant.now().minusSeconds(60), "my-project", "abc12345").toFilename();
+        String pending = "2026-01-24T12:00:01.000Z_my-project_def67890.json";
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(done, "done");
+            repository.createPendingTask(pending, "waiting");
+            repository.move(done, config.pendingDir(), config.processingDir());
+            repository.move(done, config.processingDir(), config.completedDir());
+
+            int archived = repository.compact();
+
+            assertThat(archived).isEqualTo(1);
+            assertThat(repository.read(pending, config.pendingDir())).isEqualTo("waiting");
+            assertThatThrownBy(() -> repository.read(done, config.completedDir()))
+                    .isInstanceOf(NoSuchFileException.class);
+            repository.move(pending, config.pendingDir(), config.processingDir());
+        }
+        Path archive = config.storageRoot().resolve("journal").resolve(JournalTaskRepository.ARCHIVE_FILE);
+        assertThat(Files.readString(archive))
+                .isEqualTo("{\"file\":\"" + done + "\",\"state\":\"completed\",\"content\":\"done\"}\n");
+
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.listProcessing()).containsExactly(pending);
+            assertThat(reopened.containsUniqueId("abc12345")).isTrue();
+        }
+    }
+
+    @Test
+    void compact_indexesOnlyRecentlyReceivedTasksAndRestartReadsTheIndexInsteadOfTheArchive() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        Path journalDir = config.storageRoot().resolve("journal");
+        String recent = WebhookFilename.create(Instant.now().minusSeconds(60), "my-project", "abc12345").toFilename();
+        String old = WebhookFilename.create(Instant.now().minus(Duration.ofDays(2)), "my-project", "def67890").toFilename();
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            for (String filename : List.of(recent, old)) {
+                repository.createPendingTask(filename, "done");
+                repository.move(filename, config.pendingDir(), config.completedDir());
+            }
+
+            assertThat(repository.compact()).isEqualTo(2);
+        }
+        assertThat(Files.readAllLines(journalDir.resolve(JournalTaskRepository.ARCHIVE_INDEX_FILE))).containsExactly(recent);
+        Files.delete(journalDir.resolve(JournalTaskRepository.ARCHIVE_FILE));
+
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.containsUniqueId("abc12345")).isTrue();
+            assertThat(reopened.containsUniqueId("def67890")).isFalse();
+        }
+    }
+
+    @Test
+    void containsUniqueId_withArchiveWrittenBeforeTheIndex_readsFilenamesFromTheArchive() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        Path journalDir = Files.createDirectories(config.storageRoot().resolve("journal"));
+        String recent = WebhookFilename.create(Instant.now().minusSeconds(60), "my-project", "abc12345").toFilename();
+        Files.writeString(journalDir.resolve(JournalTaskRepository.ARCHIVE_FILE),
+                "{\"file\":\"" + FILENAME + "\",\"state\":\"completed\",\"content\":{\"nested\":[1,2]}}\n"
+                        + "{\"state\":\"completed\",\"file\":\"" + recent + "\",\"content\":\"done\"}\n");
+
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            assertThat(repository.containsUniqueId("abc12345")).isTrue();
+        }
+    }
+
+    @Test
+    void compact_afterInterruptedCompaction_archivesEachTaskOnce() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        Path journalDir = config.storageRoot().resolve("journal");
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config)) {
+            repository.createPendingTask(FILENAME, "done");
+            repository.move(FILENAME, config.pendingDir(), config.completedDir());
+            // Stops the compaction after the archive has been written but before the journal is replaced
+            Path obstacle = Files.createDirectories(journalDir.resolve(JournalTaskRepository.JOURNAL_FILE + ".compact"));
+            Files.writeString(obstacle.resolve("blocker"), "");
+
+            assertThatThrownBy(repository::compact).isInstanceOf(IOException.class);
+            assertThat(repository.read(FILENAME, config.completedDir())).isEqualTo("done");
+            Files.delete(obstacle.resolve("blocker"));
+            Files.delete(obstacle);
+        }
+
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.compact()).isEqualTo(1);
+        }
+
+        assertThat(Files.readAllLines(journalDir.resolve(JournalTaskRepository.ARCHIVE_FILE))).hasSize(1);
+        assertThat(journalDir.resolve(JournalTaskRepository.ARCHIVE_MARKER_FILE)).doesNotExist();
+    }
+
+    @Test
+    void concurrentWriters_allRecordsSurviveRestart() throws Exception {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            filenames.add("2026-01-24T12:00:00.000Z_my-project_%08x.json".formatted(i));
+        }
+        try (JournalTaskRepository repository = JournalTaskRepository.create(config);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Void>> writes = filenames.stream()
+                    .map(filename -> CompletableFuture.runAsync(() -> {
+                        try {
+                            repository.createPendingTask(filename, filename);
+                            repository.move(filename, config.pendingDir(), config.processingDir());
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }, executor))
+                    .toList();
+            CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+        }
+
+        try (JournalTaskRepository reopened = JournalTaskRepository.create(config)) {
+            assertThat(reopened.listPending()).isEmpty();
+            assertThat(reopened.listProcessing()).containsExactlyInAnyOrder(filenames.toArray(String[]::new));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.gemini.webhooks.router.storage;
+
+import com.gemini.webhooks.router.FileBasedTasksConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageLayoutMigrationTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void migrateToSharded_movesFinishedTasksIntoShardOfTheirDay() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String completed = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        String failed = "2026-01-25T08:00:00.000Z_my-project_def67890.json";
+        write(config.completedDir().resolve(completed));
+        write(config.failedDir().resolve(failed));
+        write(config.skippedDir().resolve("not-a-webhook.json"));
+
+        int moved = StorageLayoutMigration.migrateToSharded(config);
+
+        assertThat(moved).isEqualTo(3);
+        assertThat(Files.exists(config.completedDir().resolve("2026-01-24").resolve(completed))).isTrue();
+        assertThat(Files.exists(config.failedDir().resolve("2026-01-25").resolve(failed))).isTrue();
+        assertThat(Files.exists(config.skippedDir().resolve("unsorted").resolve("not-a-webhook.json"))).isTrue();
+    }
+
+    @Test
+    void migrateToSharded_movesOutputsIntoShardOfTheDayTheyWereWritten() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        Path output = config.outputsDir().resolve("my-project_issue-1_2026-01-24_12-00-00.txt");
+        write(output);
+        Files.setLastModifiedTime(output, FileTime.from(Instant.parse("2026-01-24T23:30:00Z")));
+
+        StorageLayoutMigration.migrateToSharded(config);
+
+        assertThat(Files.exists(config.outputsDir().resolve("2026-01-24").resolve(output.getFileName()))).isTrue();
+    }
+
+    @Test
+    void migrateToSharded_leavesPendingTasksAndExistingShardsAlone() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        write(config.pendingDir().resolve(filename));
+        write(config.completedDir().resolve("2026-01-24").resolve(filename));
+
+        int moved = StorageLayoutMigration.migrateToSharded(config);
+
+        assertThat(moved).isZero();
+        assertThat(Files.exists(config.pendingDir().resolve(filename))).isTrue();
+    }
+
+    private static void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "{}");
+    }
+}
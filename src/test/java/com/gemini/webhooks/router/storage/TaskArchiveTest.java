@@ -0,0 +1,151 @@
+package com.gemini.webhooks.router.storage;
+
+import com.gemini.webhooks.router.FileBasedTasksConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TaskArchiveTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T00:00:00Z");
+    private static final String OLD = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+    private static final String OLD_FAILED = "2026-01-24T18:00:00.000Z_other-project_def67890.json";
+    private static final String RECENT = "2026-02-28T12:00:00.000Z_my-project_0a1b2c3d.json";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void compact_movesOldFinishedTasksIntoDailySegment() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        write(config.completedDir().resolve(OLD), "{\"n\":1}");
+        write(config.failedDir().resolve(OLD_FAILED), "{\"n\":2}");
+        write(config.completedDir().resolve(RECENT), "{\"n\":3}");
+        TaskArchive archive = new TaskArchive(config, Duration.ofDays(7));
+
+        int archived = archive.compact(NOW);
+
+        assertThat(archived).isEqualTo(2);
+        assertThat(Files.exists(config.completedDir().resolve(OLD))).isFalse();
+        assertThat(Files.exists(config.failedDir().resolve(OLD_FAILED))).isFalse();
+        assertThat(Files.exists(config.completedDir().resolve(RECENT))).isTrue();
+        assertThat(Files.exists(config.archiveDir().resolve("2026-01-24.jsonl.gz"))).isTrue();
+        assertThat(Files.exists(config.archiveDir().resolve("2026-01-24.index.jsonl"))).isTrue();
+    }
+
+    @Test
+    void findByUniqueId_returnsArchivedTaskAndItsContent() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        write(config.failedDir().resolve(OLD_FAILED), "{\"n\":2}");
+        TaskArchive archive = new TaskArchive(config, Duration.ofDays(7));
+        archive.compact(NOW);
+
+        TaskArchive.ArchivedTask task = archive.findByUniqueId("def67890").orElseThrow();
+
+        assertThat(task).isEqualTo(new TaskArchive.ArchivedTask(OLD_FAILED, "def67890", "other-project", "failed", "2026-01-24"));
+        assertThat(archive.read(task)).isEqualTo("{\"n\":2}");
+    }
+
+    @Test
+    void findByRepo_readsTasksFromSeveralCompactions() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        TaskArchive archive = new TaskArchive(config, Duration.ofDays(7));
+        write(config.completedDir().resolve(OLD), "{\"n\":1}");
+        archive.compact(NOW);
+        String sameDay = "2026-01-24T20:00:00.000Z_my-project_11223344.json";
+        write(config.skippedDir().resolve(sameDay), "{\"n\":4}");
+        archive.compact(NOW);
+
+        assertThat(archive.findByRepo("my-project").stream().map(TaskArchive.ArchivedTask::filename).toList())
+                .containsExactly(OLD, sameDay);
+        assertThat(archive.read(archive.findByUniqueId("11223344").orElseThrow())).isEqualTo("{\"n\":4}");
+        assertThat(archive.read(archive.findByUniqueId("abc12345").orElseThrow())).isEqualTo("{\"n\":1}");
+    }
+
+    @Test
+    void compact_archivesTasksInShardsAndRemovesEmptyShards() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir).withLayout(StorageLayout.SHARDED);
+        Path shard = config.completedDir().resolve("2026-01-24");
+        write(shard.resolve(OLD), "{}");
+
+        new TaskArchive(config, Duration.ofDays(7)).compact(NOW);
+
+        assertThat(Files.exists(shard)).isFalse();
+        assertThat(Files.exists(config.completedDir())).isTrue();
+    }
+
+    @Test
+    void compact_deletesTaskAlreadyIndexedWithoutArchivingItTwice() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        TaskArchive archive = new TaskArchive(config, Duration.ofDays(7));
+        write(config.completedDir().resolve(OLD), "{\"n\":1}");
+        archive.compact(NOW);
+        // As if the previous compaction stopped before deleting it
+        write(config.completedDir().resolve(OLD), "{\"n\":1}");
+
+        archive.compact(NOW);
+
+        assertThat(Files.exists(config.completedDir().resolve(OLD))).isFalse();
+        assertThat(archive.findByRepo("my-project")).hasSize(1);
+    }
+
+    @Test
+    void compact_discardsSegmentDataThatWasNeverIndexed() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        TaskArchive archive = new TaskArchive(config, Duration.ofDays(7));
+        write(config.completedDir().resolve(OLD), "{\"n\":1}");
+        archive.compact(NOW);
+        // As if a compaction stopped after writing its segment member but before indexing it
+        String sameDay = "2026-01-24T20:00:00.000Z_my-project_11223344.json";
+        write(config.skippedDir().resolve(sameDay), "{\"n\":4}");
+        Path segment = config.archiveDir().resolve("2026-01-24.jsonl.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(segment, StandardOpenOption.APPEND))) {
+            out.write(("{\"file\":\"" + sameDay + "\",\"state\":\"skipped\",\"content\":\"{}\"}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        archive.compact(NOW);
+
+        assertThat(segmentLines(segment)).hasSize(2);
+        assertThat(archive.read(archive.findByUniqueId("11223344").orElseThrow())).isEqualTo("{\"n\":4}");
+        assertThat(Files.exists(config.skippedDir().resolve(sameDay))).isFalse();
+    }
+
+    @Test
+    void compact_whenDisabled_keepsEveryTask() throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        write(config.completedDir().resolve(OLD), "{}");
+
+        int archived = new TaskArchive(config, Duration.ZERO).compact(NOW);
+
+        assertThat(archived).isZero();
+        assertThat(Files.exists(config.completedDir().resolve(OLD))).isTrue();
+    }
+
+    private static List<String> segmentLines(Path segment) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(segment)), StandardCharsets.UTF_8))) {
+            return reader.lines().toList();
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
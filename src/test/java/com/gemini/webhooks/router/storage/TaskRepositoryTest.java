@@ -1,6 +1,7 @@
 package com.gemini.webhooks.router.storage;
 
 import com.gemini.webhooks.router.FileBasedTasksConfig;
+import com.gemini.webhooks.router.domain.WebhookFilename;
 import com.yegor256.Mktmp;
 import com.yegor256.MktmpResolver;
 import org.junit.jupiter.api.Test;
@@ -10,6 +11,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -107,4 +111,237 @@ class TaskRepositoryTest {
         assertThat(Files.exists(failed.resolve(filename))).isTrue();
         assertThat(Files.exists(processing.resolve(filename))).isFalse();
     }
+
+    @Test
+    void containsUniqueId_shouldFindTaskCreatedThroughRepository(@Mktmp Path tempDir) throws IOException {
+        TaskRepository repository = FileSystemTaskRepository.create(FileBasedTasksConfig.create(tempDir));
+
+        repository.createPendingTask("2026-01-24T12:00:00.000Z_my-project_abc12345.json", "{}");
+
+        assertThat(repository.containsUniqueId("abc12345")).isTrue();
+        assertThat(repository.containsUniqueId("def67890")).isFalse();
+    }
+
+    @Test
+    void containsUniqueId_shouldFindRecentTasksAlreadyInFinishedDirectories(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        Files.createDirectories(config.completedDir());
+        Files.createDirectories(config.failedDir());
+        Files.writeString(config.completedDir().resolve(receivedMinutesAgo(5, "abc12345")), "{}");
+        Files.writeString(config.failedDir().resolve(receivedMinutesAgo(5, "def67890")), "{}");
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+
+        assertThat(repository.containsUniqueId("abc12345")).isTrue();
+        assertThat(repository.containsUniqueId("def67890")).isTrue();
+    }
+
+    @Test
+    void containsUniqueId_ignoresFinishedTasksOlderThanRecentWindow(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        Files.createDirectories(config.completedDir());
+        Files.createDirectories(config.pendingDir());
+        Files.writeString(config.completedDir().resolve(receivedMinutesAgo(2 * 24 * 60, "abc12345")), "{}");
+        Files.writeString(config.pendingDir().resolve(receivedMinutesAgo(2 * 24 * 60, "def67890")), "{}");
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+
+        assertThat(repository.containsUniqueId("abc12345")).isFalse();
+        assertThat(repository.containsUniqueId("def67890")).isTrue();
+    }
+
+    @Test
+    void containsUniqueId_keepsTaskMovedToFinishedDirectoryForRecentWindow(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String filename = receivedMinutesAgo(5, "abc12345");
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+        repository.createPendingTask(filename, "{}");
+
+        repository.move(filename, config.pendingDir(), config.processingDir());
+        repository.move(filename, config.processingDir(), config.completedDir());
+
+        assertThat(repository.containsUniqueId("abc12345")).isTrue();
+    }
+
+    @Test
+    void move_withShardedLayout_placesFinishedTaskInShardOfItsDay(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir).withLayout(StorageLayout.SHARDED);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+        repository.createPendingTask(filename, "{}");
+
+        repository.move(filename, config.pendingDir(), config.processingDir());
+        Path result = repository.move(filename, config.processingDir(), config.completedDir());
+
+        assertThat(result).isEqualTo(config.completedDir().resolve("2026-01-24").resolve(filename).toAbsolutePath());
+        assertThat(Files.exists(result)).isTrue();
+        assertThat(repository.read(filename, config.completedDir())).isEqualTo("{}");
+    }
+
+    @Test
+    void move_withShardedLayout_findsTaskInShardWhenMovingItOut(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir).withLayout(StorageLayout.SHARDED);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        Files.createDirectories(config.skippedDir().resolve("2026-01-24"));
+        Files.writeString(config.skippedDir().resolve("2026-01-24").resolve(filename), "{}");
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+
+        repository.move(filename, config.skippedDir(), config.pendingDir());
+
+        assertThat(repository.listPending()).containsExactly(filename);
+    }
+
+    @Test
+    void containsUniqueId_findsTasksInShards(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir).withLayout(StorageLayout.SHARDED);
+        String filename = receivedMinutesAgo(5, "abc12345");
+        Path shard = config.shardFor(config.completedDir(), filename);
+        Files.createDirectories(shard);
+        Files.writeString(shard.resolve(filename), "{}");
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+
+        assertThat(repository.containsUniqueId("abc12345")).isTrue();
+    }
+
+    @Test
+    void createPendingTask_leavesNothingBehindInIncoming(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+
+        repository.createPendingTask(filename, "{\"a\":1}");
+
+        assertThat(Files.readString(config.pendingDir().resolve(filename))).isEqualTo("{\"a\":1}");
+        try (var incoming = Files.list(config.incomingDir())) {
+            assertThat(incoming.toList()).isEmpty();
+        }
+    }
+
+    @Test
+    void createPendingTask_withGroupCommit_publishesTasksOnCommit(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String first = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        String second = "2026-01-24T12:00:01.000Z_my-project_def67890.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config, true);
+
+        repository.createPendingTask(first, "{}");
+        repository.createPendingTask(second, "{}");
+        assertThat(repository.listPending()).isEmpty();
+        assertThat(repository.containsUniqueId("abc12345")).isTrue();
+
+        repository.commit(List.of(first, second));
+
+        assertThat(repository.listPending()).containsExactlyInAnyOrder(first, second);
+    }
+
+    @Test
+    void commit_whenPublishFailsPartway_keepsTasksAlreadyPublished(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String first = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        String second = "2026-01-24T12:00:01.000Z_my-project_def67890.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config, true);
+        repository.createPendingTask(first, "{}");
+        repository.createPendingTask(second, "{}");
+        // A non-empty directory in the way makes publishing the second task fail
+        Files.createDirectories(config.pendingDir().resolve(second).resolve("blocker"));
+
+        assertThatThrownBy(() -> repository.commit(List.of(first, second))).isInstanceOf(IOException.class);
+
+        assertThat(Files.isRegularFile(config.pendingDir().resolve(first))).isTrue();
+        assertThat(repository.containsUniqueId("abc12345")).isTrue();
+        assertThat(Files.exists(config.incomingDir().resolve(second))).isFalse();
+        assertThat(repository.containsUniqueId("def67890")).isFalse();
+    }
+
+    @Test
+    void commit_publishesOnlyTheCallersTasksAndFailsOnlyThatCaller(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String mine = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        String theirs = "2026-01-24T12:00:01.000Z_my-project_def67890.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config, true);
+        repository.createPendingTask(mine, "{}");
+        repository.createPendingTask(theirs, "{}");
+        Files.createDirectories(config.pendingDir().resolve(mine).resolve("blocker"));
+
+        assertThatThrownBy(() -> repository.commit(List.of(mine))).isInstanceOf(IOException.class);
+        assertThat(Files.exists(config.pendingDir().resolve(theirs))).isFalse();
+        assertThat(repository.containsUniqueId("def67890")).isTrue();
+
+        repository.commit(List.of(theirs));
+
+        assertThat(Files.isRegularFile(config.pendingDir().resolve(theirs))).isTrue();
+    }
+
+    @Test
+    void createPendingTask_whenPublishFails_forgetsTheTask(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config);
+        Files.createDirectories(config.pendingDir().resolve(filename).resolve("blocker"));
+
+        assertThatThrownBy(() -> repository.createPendingTask(filename, "{}")).isInstanceOf(IOException.class);
+
+        assertThat(Files.exists(config.incomingDir().resolve(filename))).isFalse();
+        assertThat(repository.containsUniqueId("abc12345")).isFalse();
+    }
+
+    @Test
+    void discardIncomplete_deletesTasksNeverCommitted(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        FileSystemTaskRepository crashed = FileSystemTaskRepository.create(config, true);
+        crashed.createPendingTask("2026-01-24T12:00:00.000Z_my-project_abc12345.json", "{");
+
+        FileSystemTaskRepository restarted = FileSystemTaskRepository.create(config, true);
+        int discarded = restarted.discardIncomplete();
+        restarted.commit(List.of("2026-01-24T12:00:00.000Z_my-project_abc12345.json"));
+
+        assertThat(discarded).isEqualTo(1);
+        assertThat(restarted.listPending()).isEmpty();
+        assertThat(restarted.containsUniqueId("abc12345")).isFalse();
+    }
+
+    @Test
+    void listPending_withCachedListings_tracksOwnCreatesAndMoves(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String first = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        String second = "2026-01-24T12:00:01.000Z_my-project_def67890.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config, false, Duration.ofMinutes(5));
+        assertThat(repository.listPending()).isEmpty();
+
+        repository.createPendingTask(first, "{}");
+        repository.createPendingTask(second, "{}");
+        repository.move(first, config.pendingDir(), config.processingDir());
+
+        assertThat(repository.listPending()).containsExactly(second);
+        assertThat(repository.listProcessing()).containsExactly(first);
+    }
+
+    @Test
+    void invalidateListings_picksUpFilesAddedByOthers(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        FileSystemTaskRepository repository = FileSystemTaskRepository.create(config, false, Duration.ofMinutes(5));
+        assertThat(repository.listPending()).isEmpty();
+        Files.createDirectories(config.pendingDir());
+        Files.writeString(config.pendingDir().resolve(filename), "{}");
+
+        repository.invalidateListings();
+
+        assertThat(repository.listPending()).containsExactly(filename);
+    }
+
+    @Test
+    void move_withCachedListings_dropsTaskRemovedByOthers(@Mktmp Path tempDir) throws IOException {
+        FileBasedTasksConfig config = FileBasedTasksConfig.create(tempDir);
+        String filename = "2026-01-24T12:00:00.000Z_my-project_abc12345.json";
+        TaskRepository repository = FileSystemTaskRepository.create(config, false, Duration.ofMinutes(5));
+        repository.createPendingTask(filename, "{}");
+        Files.delete(config.pendingDir().resolve(filename));
+
+        assertThatThrownBy(() -> repository.move(filename, config.pendingDir(), config.processingDir()))
+                .isInstanceOf(NoSuchFileException.class);
+        assertThat(repository.listPending()).isEmpty();
+    }
+
+    private static String receivedMinutesAgo(long minutes, String uniqueId) {
+        return WebhookFilename.create(Instant.now().minus(Duration.ofMinutes(minutes)), "my-project", uniqueId).toFilename();
+    }
 }
@@ -0,0 +1,63 @@
+package com.gemini.webhooks.router.storage;
+
+import com.gemini.webhooks.router.domain.WebhookFilename;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UniqueIdIndexTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+
+    @Test
+    void contains_liveTaskRegardlessOfAge() {
+        UniqueIdIndex index = new UniqueIdIndex();
+
+        index.live(filename(NOW.minus(Duration.ofDays(30)), "abc12345"));
+
+        assertThat(index.contains("abc12345", NOW)).isTrue();
+    }
+
+    @Test
+    void contains_finishedTaskOnlyWithinRecentWindow() {
+        UniqueIdIndex index = new UniqueIdIndex();
+        String filename = filename(NOW.minus(Duration.ofHours(1)), "abc12345");
+        index.live(filename);
+
+        index.finished(filename, NOW);
+
+        assertThat(index.contains("abc12345", NOW)).isTrue();
+        assertThat(index.contains("abc12345", NOW.plus(UniqueIdIndex.RECENT_WINDOW))).isFalse();
+    }
+
+    @Test
+    void forget_dropsTaskThatNeverBecameDurable() {
+        UniqueIdIndex index = new UniqueIdIndex();
+        String filename = filename(NOW, "abc12345");
+        index.live(filename);
+
+        index.forget(filename);
+
+        assertThat(index.contains("abc12345", NOW)).isFalse();
+    }
+
+    @Test
+    void seedFinished_keepsAtMostMaxRecentEntries() {
+        UniqueIdIndex index = new UniqueIdIndex();
+
+        for (int i = 0; i <= UniqueIdIndex.MAX_RECENT; i++) {
+            index.seedFinished(filename(NOW.minusMillis(UniqueIdIndex.MAX_RECENT - i), "%08x".formatted(i)), NOW);
+        }
+
+        assertThat(index.size()).isEqualTo(UniqueIdIndex.MAX_RECENT);
+        assertThat(index.contains("%08x".formatted(0), NOW)).isFalse();
+        assertThat(index.contains("%08x".formatted(UniqueIdIndex.MAX_RECENT), NOW)).isTrue();
+    }
+
+    private static String filename(Instant received, String uniqueId) {
+        return WebhookFilename.create(received, "my-project", uniqueId).toFilename();
+    }
+}